@@ -18,6 +18,7 @@
 package me.vkryl.android;
 
 import android.animation.Animator;
+import android.animation.TimeInterpolator;
 import android.animation.ValueAnimator;
 import android.os.Build;
 import android.view.View;
@@ -29,6 +30,8 @@ import android.view.animation.Interpolator;
 import android.view.animation.LinearInterpolator;
 import android.view.animation.OvershootInterpolator;
 
+import androidx.annotation.Nullable;
+
 import me.vkryl.android.animator.Animated;
 
 public final class AnimatorUtils {
@@ -57,6 +60,58 @@ public final class AnimatorUtils {
     }
   }
 
+  /**
+   * @param interpolator Interpolator, {@code null} stands for linear one, same as in {@link ValueAnimator}.
+   */
+  public static float getInterpolation (@Nullable TimeInterpolator interpolator, float input) {
+    return interpolator != null ? interpolator.getInterpolation(input) : input;
+  }
+
+  /**
+   * @return Derivative of {@code interpolator} at {@code input}.
+   */
+  public static float getSlope (@Nullable TimeInterpolator interpolator, float input) {
+    final float step = .005f;
+    final float from = Math.max(0f, input - step);
+    final float to = Math.min(1f, input + step);
+    return (getInterpolation(interpolator, to) - getInterpolation(interpolator, from)) / (to - from);
+  }
+
+  private static final float START_FRACTION_STEP = .05f;
+  private static final float MAX_START_FRACTION = .9f;
+
+  /**
+   * Finds the point of {@code interpolator} curve to start a retargeted animation from,
+   * so it continues with the velocity of the interrupted one instead of starting the curve over.
+   *
+   * Animation started from input fraction {@code s} covers its distance with {@code interpolation(s)..1} part of the curve
+   * and lasts {@code (1 - s)} of its total duration.
+   *
+   * @param velocity Current velocity relative to the new animation: distance per millisecond
+   * multiplied by remaining duration and divided by remaining distance.
+   * @return Input fraction to seek to, 0 when velocity is directed away from the new target.
+   */
+  public static float findStartFraction (@Nullable TimeInterpolator interpolator, float velocity) {
+    if (!(velocity > 0f)) {
+      return 0f;
+    }
+    float bestFraction = 0f;
+    float bestError = Float.MAX_VALUE;
+    for (float fraction = 0f; fraction <= MAX_START_FRACTION; fraction += START_FRACTION_STEP) {
+      final float remaining = 1f - getInterpolation(interpolator, fraction);
+      if (remaining < START_FRACTION_STEP) {
+        break;
+      }
+      final float startVelocity = getSlope(interpolator, fraction) * (1f - fraction) / remaining;
+      final float error = Math.abs(startVelocity - velocity);
+      if (error < bestError) {
+        bestError = error;
+        bestFraction = fraction;
+      }
+    }
+    return bestFraction;
+  }
+
   public static void startAnimator (final View view, final Animator animator) {
     startAnimator(view, animator, false);
   }
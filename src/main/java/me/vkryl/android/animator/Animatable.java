@@ -24,4 +24,7 @@ public interface Animatable {
   default boolean hasChanges () { return false; }
   default void prepareChanges () { }
   default void applyChanges () { }
+
+  default void saveState (AnimatorState state) { }
+  default void restoreState (AnimatorState state) { }
 }
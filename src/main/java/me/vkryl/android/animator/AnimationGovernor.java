@@ -0,0 +1,293 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.animator;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.view.Choreographer;
+import android.view.View;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+
+/**
+ * Global animation quality governor.
+ *
+ * Watches frame times while animations are running, power save mode, thermal status
+ * and the number of active animations, and derives current {@link QualityTier} from them.
+ * {@link FactorAnimator} and animators in {@code animatorx} consult it before starting an animation:
+ * durations get shortened, decorative animations get dropped and off-screen targets jump straight to the final value.
+ *
+ * All methods must be called on the main thread.
+ */
+public final class AnimationGovernor {
+  @Retention(RetentionPolicy.SOURCE)
+  @IntDef({
+    QualityTier.HIGH,
+    QualityTier.REDUCED,
+    QualityTier.MINIMAL
+  })
+  public @interface QualityTier {
+    int
+      HIGH = 0,    // Animations run as configured
+      REDUCED = 1, // Durations are shortened, decorative animations are dropped
+      MINIMAL = 2  // All animations jump to final values
+    ;
+  }
+
+  public interface Listener {
+    void onAnimationQualityChanged (@QualityTier int tier);
+  }
+
+  private static final float REDUCED_DURATION_FACTOR = .6f;
+  private static final int REDUCED_ACTIVE_ANIMATION_COUNT = 48;
+  private static final int FRAME_WINDOW_SIZE = 30;
+  private static final long DEFAULT_FRAME_INTERVAL_NANOS = 16_666_667L;
+
+  private static AnimationGovernor instance;
+
+  public static AnimationGovernor instance () {
+    if (instance == null) {
+      instance = new AnimationGovernor();
+    }
+    return instance;
+  }
+
+  private final ArrayList<Listener> listeners = new ArrayList<>();
+
+  private @QualityTier int tier = QualityTier.HIGH;
+  private @QualityTier int forcedTier = -1;
+
+  private boolean isPowerSaveMode;
+  private @QualityTier int thermalTier = QualityTier.HIGH;
+  private @QualityTier int frameTier = QualityTier.HIGH;
+
+  private PowerManager powerManager;
+
+  private int activeAnimationCount;
+
+  private long expectedFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+  private long lastFrameTimeNanos;
+  private long windowFrameTimeNanos;
+  private int windowFrameCount;
+  private boolean isMonitoringFrames;
+  private Choreographer.FrameCallback frameCallback;
+
+  private AnimationGovernor () { }
+
+  /**
+   * Starts tracking power save mode and thermal status. Safe to call multiple times.
+   */
+  public void attach (@NonNull Context context) {
+    if (powerManager != null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP)
+      return;
+    context = context.getApplicationContext();
+    powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    if (powerManager == null)
+      return;
+    isPowerSaveMode = powerManager.isPowerSaveMode();
+    context.registerReceiver(new BroadcastReceiver() {
+      @Override
+      public void onReceive (Context context, Intent intent) {
+        isPowerSaveMode = powerManager.isPowerSaveMode();
+        updateTier();
+      }
+    }, new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED));
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      thermalTier = toThermalTier(powerManager.getCurrentThermalStatus());
+      powerManager.addThermalStatusListener(status -> {
+        thermalTier = toThermalTier(status);
+        updateTier();
+      });
+    }
+    updateTier();
+  }
+
+  private static @QualityTier int toThermalTier (int thermalStatus) {
+    if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) {
+      return QualityTier.MINIMAL;
+    } else if (thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE) {
+      return QualityTier.REDUCED;
+    } else {
+      return QualityTier.HIGH;
+    }
+  }
+
+  /**
+   * @param refreshRate Display refresh rate, used as a baseline for frame time measurements.
+   */
+  public void setRefreshRate (float refreshRate) {
+    this.expectedFrameIntervalNanos = refreshRate > 0f ? (long) (1_000_000_000L / refreshRate) : DEFAULT_FRAME_INTERVAL_NANOS;
+  }
+
+  /**
+   * Overrides measured tier, e.g. from app settings.
+   *
+   * @param tier Tier to use, or -1 to return to automatic selection.
+   */
+  public void setForcedTier (int tier) {
+    if (this.forcedTier != tier) {
+      this.forcedTier = tier;
+      updateTier();
+    }
+  }
+
+  public @QualityTier int getTier () {
+    return tier;
+  }
+
+  public void addListener (@NonNull Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener (@NonNull Listener listener) {
+    listeners.remove(listener);
+  }
+
+  public int getActiveAnimationCount () {
+    return activeAnimationCount;
+  }
+
+  /**
+   * @param duration Configured duration.
+   * @param isDecorative Whether animation is purely decorative and can be dropped under pressure.
+   * @param view View, on which animation is performed, if any.
+   * @return Duration to use. 0 means value should be applied immediately.
+   */
+  public long adjustDuration (long duration, boolean isDecorative, @Nullable View view) {
+    if (duration <= 0)
+      return duration;
+    switch (tier) {
+      case QualityTier.MINIMAL:
+        return 0;
+      case QualityTier.REDUCED:
+        if (isDecorative || (view != null && !view.isShown())) {
+          return 0;
+        }
+        return Math.max(1, (long) (duration * REDUCED_DURATION_FACTOR));
+      case QualityTier.HIGH:
+      default:
+        return duration;
+    }
+  }
+
+  // Animation tracking, called by animators
+
+  public void onAnimationStarted () {
+    activeAnimationCount++;
+    if (activeAnimationCount == 1) {
+      startFrameMonitoring();
+    }
+    if (activeAnimationCount == REDUCED_ACTIVE_ANIMATION_COUNT) {
+      updateTier();
+    }
+  }
+
+  public void onAnimationFinished () {
+    if (activeAnimationCount > 0) {
+      activeAnimationCount--;
+      if (activeAnimationCount == 0) {
+        stopFrameMonitoring();
+      }
+      if (activeAnimationCount == REDUCED_ACTIVE_ANIMATION_COUNT - 1) {
+        updateTier();
+      }
+    }
+  }
+
+  private void startFrameMonitoring () {
+    if (isMonitoringFrames || Looper.myLooper() != Looper.getMainLooper())
+      return;
+    if (frameCallback == null) {
+      frameCallback = this::onFrame;
+    }
+    isMonitoringFrames = true;
+    lastFrameTimeNanos = 0;
+    Choreographer.getInstance().postFrameCallback(frameCallback);
+  }
+
+  private void stopFrameMonitoring () {
+    if (isMonitoringFrames) {
+      isMonitoringFrames = false;
+      Choreographer.getInstance().removeFrameCallback(frameCallback);
+      windowFrameTimeNanos = 0;
+      windowFrameCount = 0;
+      // Nothing is measured while idle, so relax frame-based tier step by step
+      if (frameTier != QualityTier.HIGH) {
+        frameTier--;
+        updateTier();
+      }
+    }
+  }
+
+  private void onFrame (long frameTimeNanos) {
+    if (!isMonitoringFrames)
+      return;
+    if (lastFrameTimeNanos != 0) {
+      windowFrameTimeNanos += frameTimeNanos - lastFrameTimeNanos;
+      windowFrameCount++;
+      if (windowFrameCount == FRAME_WINDOW_SIZE) {
+        long averageFrameTimeNanos = windowFrameTimeNanos / windowFrameCount;
+        windowFrameTimeNanos = 0;
+        windowFrameCount = 0;
+        @QualityTier int frameTier;
+        if (averageFrameTimeNanos > expectedFrameIntervalNanos * 2) {
+          frameTier = QualityTier.MINIMAL;
+        } else if (averageFrameTimeNanos > expectedFrameIntervalNanos * 13 / 10) {
+          frameTier = QualityTier.REDUCED;
+        } else {
+          frameTier = QualityTier.HIGH;
+        }
+        if (this.frameTier != frameTier) {
+          this.frameTier = frameTier;
+          updateTier();
+        }
+      }
+    }
+    lastFrameTimeNanos = frameTimeNanos;
+    Choreographer.getInstance().postFrameCallback(frameCallback);
+  }
+
+  private void updateTier () {
+    @QualityTier int tier;
+    if (forcedTier != -1) {
+      tier = forcedTier;
+    } else {
+      tier = Math.max(thermalTier, frameTier);
+      if (isPowerSaveMode || activeAnimationCount >= REDUCED_ACTIVE_ANIMATION_COUNT) {
+        tier = Math.max(tier, QualityTier.REDUCED);
+      }
+    }
+    if (this.tier != tier) {
+      this.tier = tier;
+      for (int i = listeners.size() - 1; i >= 0; i--) {
+        listeners.get(i).onAnimationQualityChanged(tier);
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.animator;
+
+/**
+ * Compact primitive snapshot of animators state: values, targets and elapsed time of running animations.
+ *
+ * Typical usage: row model owns a single {@link AnimatorState}, view calls {@code saveState} of its animators
+ * on unbind and {@code restoreState} in the very same order on bind, so in-flight animations resume where they were.
+ * Buffer is reused between snapshots and grows only when more animators are saved than before.
+ */
+public final class AnimatorState {
+  private long[] data;
+  private int size;
+  private int readPosition;
+
+  public AnimatorState () {
+    this(16);
+  }
+
+  public AnimatorState (int initialCapacity) {
+    this.data = new long[Math.max(1, initialCapacity)];
+  }
+
+  /**
+   * Drops previous snapshot, so the next {@code saveState} calls write from the start.
+   */
+  public void clear () {
+    size = 0;
+    readPosition = 0;
+  }
+
+  /**
+   * Moves read position to the start, so the same snapshot can be restored once again.
+   */
+  public void rewind () {
+    readPosition = 0;
+  }
+
+  public boolean isEmpty () {
+    return size == 0;
+  }
+
+  public boolean hasRemaining () {
+    return readPosition < size;
+  }
+
+  // Write
+
+  private void ensureCapacity (int capacity) {
+    if (capacity > data.length) {
+      long[] newData = new long[Math.max(capacity, data.length * 2)];
+      System.arraycopy(data, 0, newData, 0, size);
+      data = newData;
+    }
+  }
+
+  public void putLong (long value) {
+    ensureCapacity(size + 1);
+    data[size++] = value;
+  }
+
+  public void putInt (int value) {
+    putLong(value);
+  }
+
+  public void putFloat (float value) {
+    putLong(Float.floatToRawIntBits(value));
+  }
+
+  public void putBoolean (boolean value) {
+    putLong(value ? 1 : 0);
+  }
+
+  /**
+   * Reserves a slot for the record length, so reader is able to skip the record entirely.
+   *
+   * @return Position that must be passed to {@link #endRecord(int)}.
+   */
+  public int beginRecord () {
+    int position = size;
+    putLong(0);
+    return position;
+  }
+
+  public void endRecord (int position) {
+    data[position] = size - position - 1;
+  }
+
+  // Read
+
+  private void checkRemaining (int count) {
+    if (readPosition + count > size) {
+      throw new IllegalStateException("position: " + readPosition + ", size: " + size);
+    }
+  }
+
+  public long getLong () {
+    checkRemaining(1);
+    return data[readPosition++];
+  }
+
+  public int getInt () {
+    return (int) getLong();
+  }
+
+  public float getFloat () {
+    return Float.intBitsToFloat((int) getLong());
+  }
+
+  public boolean getBoolean () {
+    return getLong() != 0;
+  }
+
+  /**
+   * @return Position right after the record started with {@link #beginRecord()}.
+   */
+  public int readRecord () {
+    int length = (int) getLong();
+    checkRemaining(length);
+    return readPosition + length;
+  }
+
+  public void skipRecord (int endPosition) {
+    if (endPosition < readPosition || endPosition > size) {
+      throw new IllegalArgumentException("position: " + readPosition + ", end: " + endPosition);
+    }
+    readPosition = endPosition;
+  }
+}
@@ -28,16 +28,46 @@ import me.vkryl.core.MathUtils;
 import me.vkryl.core.lambda.FutureFloat;
 
 public class AtomicAnimator<AtomicValue extends FutureFloat> implements FutureFloat {
-  private static class TemporaryValue<AtomicValue extends FutureFloat> implements FutureFloat {
+  /**
+   * Maximum amount of nested {@link TemporaryValue} when animation gets interrupted repeatedly.
+   * Deeper chains get flattened into {@link BlendValue}: interpolation is linear, so the chain is a weighted sum
+   * of its source values. Sources are kept, so dynamic ones (e.g. depending on the current theme) are still followed,
+   * and the same source met several times (e.g. when toggling between two values) is stored once.
+   */
+  private static final int MAX_CHAIN_DEPTH = 3;
+
+  /**
+   * Maximum amount of sources in {@link BlendValue}, so reads stay O(1).
+   * Least weighted sources beyond the limit are snapshotted into a single {@link ConstantValue}.
+   */
+  private static final int MAX_BLEND_SOURCES = 8;
+
+  private static class ConstantValue implements FutureFloat {
+    private final float value;
+    public ConstantValue (float value) {
+      this.value = value;
+    }
+    @Override
+    public float getFloatValue () {
+      return value;
+    }
+  }
+
+  static class TemporaryValue<AtomicValue extends FutureFloat> implements FutureFloat {
     private final AtomicAnimator<AtomicValue> animator;
-    private final FutureFloat fromValue;
-    private final AtomicValue toValue;
-    private final float factor;
-    public TemporaryValue (AtomicAnimator<AtomicValue> animator, FutureFloat fromValue, AtomicValue toValue, float factor) {
+    final FutureFloat fromValue;
+    final AtomicValue toValue;
+    final float factor;
+    private final int depth;
+    TemporaryValue (AtomicAnimator<AtomicValue> animator, FutureFloat fromValue, AtomicValue toValue, float factor, int depth) {
       this.animator = animator;
       this.fromValue = fromValue;
       this.toValue = toValue;
       this.factor = factor;
+      this.depth = depth;
+    }
+    private static int depthOf (FutureFloat value) {
+      return value instanceof TemporaryValue ? ((TemporaryValue<?>) value).depth : 0;
     }
     @Override
     public float getFloatValue () {
@@ -49,14 +79,31 @@ public class AtomicAnimator<AtomicValue extends FutureFloat> implements FutureFl
     }
   }
 
+  static class BlendValue implements FutureFloat {
+    final FutureFloat[] sources;
+    final float[] weights;
+    BlendValue (FutureFloat[] sources, float[] weights) {
+      this.sources = sources;
+      this.weights = weights;
+    }
+    @Override
+    public float getFloatValue () {
+      float value = 0f;
+      for (int i = 0; i < sources.length; i++) {
+        value += sources[i].getFloatValue() * weights[i];
+      }
+      return value;
+    }
+  }
+
   public interface Target<AtomicValue extends FutureFloat> {
     void onAtomicValueUpdate (AtomicAnimator<AtomicValue> animator, float newValue);
   }
 
   private final @NonNull Target<AtomicValue> target;
 
-  private @NonNull FutureFloat currentValue;
-  private @Nullable AtomicValue futureValue;
+  @NonNull FutureFloat currentValue;
+  @Nullable AtomicValue futureValue;
   private final @NonNull FactorAnimator animator;
   public AtomicAnimator (@NonNull Target<AtomicValue> target, Interpolator interpolator, long duration, @NonNull AtomicValue currentValue) {
     this.target = target;
@@ -65,7 +112,7 @@ public class AtomicAnimator<AtomicValue extends FutureFloat> implements FutureFl
     this.animator = new FactorAnimator(0, new FactorAnimator.Target() {
       @Override
       public void onFactorChanged (int id, float factor, float fraction, FactorAnimator callee) {
-        notifyValueChanged(false);
+        notifyValueChanged();
       }
 
       @Override
@@ -83,7 +130,13 @@ public class AtomicAnimator<AtomicValue extends FutureFloat> implements FutureFl
       } else if (factor == 0f) {
         futureValue = null;
       } else {
-        currentValue = new TemporaryValue<>(this, currentValue, futureValue, factor);
+        FutureFloat fromValue = currentValue;
+        int depth = TemporaryValue.depthOf(fromValue);
+        if (depth >= MAX_CHAIN_DEPTH) {
+          fromValue = flatten(fromValue);
+          depth = 0;
+        }
+        currentValue = newTemporaryValue(fromValue, futureValue, factor, depth + 1);
         futureValue = null;
       }
       animator.forceFactor(0f);
@@ -91,7 +144,6 @@ public class AtomicAnimator<AtomicValue extends FutureFloat> implements FutureFl
   }
 
   public final void setValue (AtomicValue atomicValue, boolean animated) {
-    float lastValue = getFloatValue();
     if (animated) {
       applyCurrentValue(false);
       this.futureValue = atomicValue;
@@ -101,8 +153,103 @@ public class AtomicAnimator<AtomicValue extends FutureFloat> implements FutureFl
       this.futureValue = null;
       this.currentValue = atomicValue;
       this.animator.forceFactor(0f);
-      notifyValueChanged(lastValue != getFloatValue());
+      notifyValueChanged();
+    }
+  }
+
+  private FutureFloat flatten (FutureFloat value) {
+    if (!isLinear()) {
+      // Custom interpolation can't be expressed as a weighted sum
+      return newConstantValue(value);
+    }
+    final int capacity = MAX_BLEND_SOURCES + MAX_CHAIN_DEPTH + 1;
+    FutureFloat[] sources = new FutureFloat[capacity];
+    float[] weights = new float[capacity];
+    int count = collectSources(value, 1f, sources, weights, 0);
+    if (count > MAX_BLEND_SOURCES) {
+      // Sort by weight descending, then snapshot the tail
+      for (int i = 1; i < count; i++) {
+        FutureFloat source = sources[i];
+        float weight = weights[i];
+        int j = i - 1;
+        while (j >= 0 && weights[j] < weight) {
+          sources[j + 1] = sources[j];
+          weights[j + 1] = weights[j];
+          j--;
+        }
+        sources[j + 1] = source;
+        weights[j + 1] = weight;
+      }
+      final int keepCount = MAX_BLEND_SOURCES - 1;
+      final int tailCount = count - keepCount;
+      float tailWeight = 0f;
+      for (int i = keepCount; i < count; i++) {
+        tailWeight += weights[i];
+      }
+      FutureFloat[] tailSources = new FutureFloat[tailCount];
+      float[] tailWeights = new float[tailCount];
+      for (int i = 0; i < tailCount; i++) {
+        tailSources[i] = sources[keepCount + i];
+        tailWeights[i] = weights[keepCount + i] / tailWeight;
+      }
+      sources[keepCount] = newConstantValue(newBlendValue(tailSources, tailWeights));
+      weights[keepCount] = tailWeight;
+      count = MAX_BLEND_SOURCES;
     }
+    if (count == 1) {
+      return sources[0];
+    }
+    FutureFloat[] blendSources = new FutureFloat[count];
+    float[] blendWeights = new float[count];
+    System.arraycopy(sources, 0, blendSources, 0, count);
+    System.arraycopy(weights, 0, blendWeights, 0, count);
+    return newBlendValue(blendSources, blendWeights);
+  }
+
+  private int collectSources (FutureFloat value, float weight, FutureFloat[] sources, float[] weights, int count) {
+    if (value instanceof TemporaryValue && ((TemporaryValue<?>) value).animator == this) {
+      TemporaryValue<?> temporaryValue = (TemporaryValue<?>) value;
+      count = collectSources(temporaryValue.fromValue, weight * (1f - temporaryValue.factor), sources, weights, count);
+      return collectSources(temporaryValue.toValue, weight * temporaryValue.factor, sources, weights, count);
+    }
+    if (value instanceof BlendValue) {
+      BlendValue blendValue = (BlendValue) value;
+      for (int i = 0; i < blendValue.sources.length; i++) {
+        count = collectSources(blendValue.sources[i], weight * blendValue.weights[i], sources, weights, count);
+      }
+      return count;
+    }
+    if (weight == 0f) {
+      return count;
+    }
+    for (int i = 0; i < count; i++) {
+      if (sources[i] == value) {
+        weights[i] += weight;
+        return count;
+      }
+    }
+    sources[count] = value;
+    weights[count] = weight;
+    return count + 1;
+  }
+
+  /**
+   * @return True when {@link #interpolate} is linear, so interrupted chains can be flattened into {@link BlendValue}.
+   */
+  boolean isLinear () {
+    return getClass() == AtomicAnimator.class;
+  }
+
+  FutureFloat newBlendValue (FutureFloat[] sources, float[] weights) {
+    return new BlendValue(sources, weights);
+  }
+
+  FutureFloat newConstantValue (FutureFloat value) {
+    return new ConstantValue(value.getFloatValue());
+  }
+
+  FutureFloat newTemporaryValue (FutureFloat fromValue, AtomicValue toValue, float factor, int depth) {
+    return new TemporaryValue<>(this, fromValue, toValue, factor, depth);
   }
 
   protected float interpolate (FutureFloat fromValue, AtomicValue toValue, float factor) {
@@ -113,8 +260,16 @@ public class AtomicAnimator<AtomicValue extends FutureFloat> implements FutureFl
     );
   }
 
+  final float getFutureFactor () {
+    return animator.getFactor();
+  }
+
   @Override
   public final float getFloatValue () {
+    return computeFloatValue();
+  }
+
+  float computeFloatValue () {
     if (futureValue != null) {
       float factor = animator.getFactor();
       if (factor == 1f) {
@@ -128,11 +283,15 @@ public class AtomicAnimator<AtomicValue extends FutureFloat> implements FutureFl
 
   private float lastNotifiedValue;
 
-  private void notifyValueChanged (boolean force) {
+  void notifyValueChanged () {
     float newValue = getFloatValue();
-    if (newValue != lastNotifiedValue || force) {
+    if (newValue != lastNotifiedValue) {
       this.lastNotifiedValue = newValue;
-      target.onAtomicValueUpdate(this, newValue);
+      notifyTarget(newValue);
     }
   }
+
+  final void notifyTarget (float newValue) {
+    target.onAtomicValueUpdate(this, newValue);
+  }
 }
@@ -30,6 +30,8 @@ public class BoolAnimator implements FactorAnimator.Target {
   private Interpolator interpolator;
   private long duration;
   private long startDelay;
+  private boolean retargetByDistance;
+  private int maxFrameRate;
 
   public BoolAnimator (View view, Interpolator interpolator, long duration) {
     this(0, (id, factor, fraction, callee) -> view.invalidate(), interpolator, duration, false);
@@ -73,6 +75,20 @@ public class BoolAnimator implements FactorAnimator.Target {
     }
   }
 
+  public void setRetargetByDistance (boolean retargetByDistance) {
+    this.retargetByDistance = retargetByDistance;
+    if (animator != null) {
+      animator.setRetargetByDistance(retargetByDistance);
+    }
+  }
+
+  public void setMaxFrameRate (int fps) {
+    this.maxFrameRate = fps;
+    if (animator != null) {
+      animator.setMaxFrameRate(fps);
+    }
+  }
+
   private float floatValue;
 
   private boolean value;
@@ -104,12 +120,7 @@ public class BoolAnimator implements FactorAnimator.Target {
       this.value = value;
       final float toValue = value ? 1f : 0f;
       if (animated) {
-        if (animator == null) {
-          animator = new FactorAnimator(0, this, interpolator, duration, floatValue);
-          if (startDelay != 0) {
-            animator.setStartDelay(startDelay);
-          }
-        }
+        ensureAnimator();
         animator.animateTo(toValue, view);
       } else {
         if (animator != null) {
@@ -123,6 +134,49 @@ public class BoolAnimator implements FactorAnimator.Target {
     }
   }
 
+  private void ensureAnimator () {
+    if (animator == null) {
+      animator = new FactorAnimator(0, this, interpolator, duration, floatValue);
+      if (startDelay != 0) {
+        animator.setStartDelay(startDelay);
+      }
+      if (retargetByDistance) {
+        animator.setRetargetByDistance(true);
+      }
+      if (maxFrameRate != 0) {
+        animator.setMaxFrameRate(maxFrameRate);
+      }
+    }
+  }
+
+  public void saveState (AnimatorState state) {
+    state.putBoolean(value);
+    state.putFloat(floatValue);
+    if (isAnimating()) {
+      state.putBoolean(true);
+      animator.saveState(state);
+    } else {
+      state.putBoolean(false);
+    }
+  }
+
+  /**
+   * Restores value saved with {@link #saveState(AnimatorState)}, resuming animation if it was running.
+   */
+  public void restoreState (AnimatorState state) {
+    this.value = state.getBoolean();
+    final float floatValue = state.getFloat();
+    if (state.getBoolean()) {
+      ensureAnimator();
+      animator.restoreState(state);
+    } else {
+      if (animator != null) {
+        animator.forceFactor(floatValue);
+      }
+      setFloatValue(floatValue);
+    }
+  }
+
   public void cancel () {
     if (animator != null) {
       animator.cancel();
@@ -0,0 +1,332 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.animator;
+
+import android.animation.ValueAnimator;
+import android.os.Build;
+import android.view.animation.AnimationUtils;
+import android.view.animation.Interpolator;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+import me.vkryl.android.AnimatorUtils;
+
+/**
+ * Group of boolean values animated by a single driver,
+ * e.g. selection state of all rows in a list.
+ *
+ * Keys are indexes in range [0, size). Targets are stored as packed bits, progress as {@code float[]},
+ * so toggling all N values costs one animator instead of N {@link BoolAnimator}s.
+ */
+public final class BoolAnimatorGroup {
+  public interface Callback {
+    void onGroupValuesChanged (BoolAnimatorGroup group);
+    default void onGroupAnimationFinished (BoolAnimatorGroup group) { }
+  }
+
+  private final Callback callback;
+  private Interpolator interpolator;
+  private long duration;
+
+  private int size;
+  private long[] values;
+  private float[] floatValues, fromValues;
+  private long[] startTimes;
+
+  // Keys with animation in progress
+  private int[] activeKeys;
+  private int[] activePositions;
+  private int activeCount;
+  private boolean isCountedByGovernor;
+
+  private ValueAnimator driver;
+  private long minFrameInterval;
+  private long lastFrameTime;
+
+  public BoolAnimatorGroup (@NonNull Callback callback, Interpolator interpolator, long duration, int size) {
+    this.callback = callback;
+    this.interpolator = interpolator;
+    this.duration = duration;
+    this.values = new long[0];
+    this.floatValues = new float[0];
+    this.fromValues = new float[0];
+    this.startTimes = new long[0];
+    this.activeKeys = new int[0];
+    this.activePositions = new int[0];
+    setSize(size);
+  }
+
+  public void setDuration (long duration) {
+    this.duration = duration;
+  }
+
+  public void setInterpolator (Interpolator interpolator) {
+    this.interpolator = interpolator;
+  }
+
+  /**
+   * Limits how often values are updated and {@link Callback#onGroupValuesChanged} is called while animating.
+   *
+   * @param fps Maximum update rate. 0 removes the limit.
+   */
+  public void setMaxFrameRate (int fps) {
+    this.minFrameInterval = fps > 0 ? 1000 / fps : 0;
+  }
+
+  public int size () {
+    return size;
+  }
+
+  /**
+   * Changes amount of keys. Values of the remaining keys are preserved, new keys are {@code false}.
+   */
+  public void setSize (int size) {
+    if (size < 0)
+      throw new IllegalArgumentException(Integer.toString(size));
+    if (size < this.size) {
+      for (int key = size; key < this.size; key++) {
+        setValueImpl(key, false, false);
+      }
+    }
+    if (size > floatValues.length) {
+      int capacity = Math.max(size, floatValues.length * 3 / 2);
+      values = Arrays.copyOf(values, (capacity + 63) >>> 6);
+      floatValues = Arrays.copyOf(floatValues, capacity);
+      fromValues = Arrays.copyOf(fromValues, capacity);
+      startTimes = Arrays.copyOf(startTimes, capacity);
+      activeKeys = Arrays.copyOf(activeKeys, capacity);
+      int prevCapacity = activePositions.length;
+      activePositions = Arrays.copyOf(activePositions, capacity);
+      Arrays.fill(activePositions, prevCapacity, capacity, -1);
+    }
+    this.size = size;
+    if (activeCount == 0) {
+      stopDriver();
+    }
+  }
+
+  public boolean getValue (int key) {
+    checkKey(key);
+    return (values[key >>> 6] & (1L << key)) != 0;
+  }
+
+  public float getFloatValue (int key) {
+    checkKey(key);
+    return floatValues[key];
+  }
+
+  public boolean isAnimating (int key) {
+    checkKey(key);
+    return activePositions[key] != -1;
+  }
+
+  public boolean isAnimating () {
+    return activeCount > 0;
+  }
+
+  public void setValue (int key, boolean value, boolean animated) {
+    checkKey(key);
+    if (setValueImpl(key, value, animated && animationsEnabled())) {
+      onValuesChanged();
+    }
+  }
+
+  public boolean toggleValue (int key, boolean animated) {
+    boolean value = !getValue(key);
+    setValue(key, value, animated);
+    return value;
+  }
+
+  public void setAllValues (boolean value, boolean animated) {
+    animated = animated && animationsEnabled();
+    boolean haveChanges = false;
+    for (int key = 0; key < size; key++) {
+      haveChanges = setValueImpl(key, value, animated) || haveChanges;
+    }
+    if (haveChanges) {
+      onValuesChanged();
+    }
+  }
+
+  public void stopAnimation (boolean applyFuture) {
+    if (activeCount == 0)
+      return;
+    for (int i = activeCount - 1; i >= 0; i--) {
+      int key = activeKeys[i];
+      if (applyFuture) {
+        floatValues[key] = targetOf(key);
+      }
+      removeActive(key);
+    }
+    stopDriver();
+    callback.onGroupValuesChanged(this);
+    callback.onGroupAnimationFinished(this);
+  }
+
+  private void checkKey (int key) {
+    if (key < 0 || key >= size)
+      throw new IndexOutOfBoundsException(Integer.toString(key));
+  }
+
+  private static boolean animationsEnabled () {
+    return Build.VERSION.SDK_INT < Build.VERSION_CODES.O || ValueAnimator.areAnimatorsEnabled();
+  }
+
+  private float targetOf (int key) {
+    return (values[key >>> 6] & (1L << key)) != 0 ? 1f : 0f;
+  }
+
+  private boolean setValueImpl (int key, boolean value, boolean animated) {
+    final long bit = 1L << key;
+    final int index = key >>> 6;
+    final boolean prevValue = (values[index] & bit) != 0;
+    if (value) {
+      values[index] |= bit;
+    } else {
+      values[index] &= ~bit;
+    }
+    final float toValue = value ? 1f : 0f;
+    if (!animated || duration <= 0) {
+      removeActive(key);
+      if (floatValues[key] != toValue) {
+        floatValues[key] = toValue;
+        return true;
+      }
+      return false;
+    }
+    if (prevValue == value && (activePositions[key] != -1 || floatValues[key] == toValue)) {
+      return false;
+    }
+    fromValues[key] = floatValues[key];
+    startTimes[key] = AnimationUtils.currentAnimationTimeMillis();
+    if (activePositions[key] == -1) {
+      activePositions[key] = activeCount;
+      activeKeys[activeCount] = key;
+      activeCount++;
+      if (activeCount == 1) {
+        setCountedByGovernor(true);
+      }
+    }
+    startDriver();
+    return false;
+  }
+
+  private void removeActive (int key) {
+    int position = activePositions[key];
+    if (position != -1) {
+      int lastKey = activeKeys[--activeCount];
+      activeKeys[position] = lastKey;
+      activePositions[lastKey] = position;
+      activePositions[key] = -1;
+      if (activeCount == 0) {
+        setCountedByGovernor(false);
+      }
+    }
+  }
+
+  private void setCountedByGovernor (boolean isCounted) {
+    // Whole group is reported as a single animation, the same way it's driven by a single ValueAnimator
+    if (this.isCountedByGovernor != isCounted) {
+      this.isCountedByGovernor = isCounted;
+      if (isCounted) {
+        AnimationGovernor.instance().onAnimationStarted();
+      } else {
+        AnimationGovernor.instance().onAnimationFinished();
+      }
+    }
+  }
+
+  private void startDriver () {
+    if (driver == null) {
+      driver = AnimatorUtils.simpleValueAnimator();
+      driver.setRepeatCount(ValueAnimator.INFINITE);
+      driver.addUpdateListener(animation -> onFrame());
+    }
+    if (!driver.isStarted()) {
+      driver.setDuration(Math.max(duration, 1));
+      driver.start();
+    }
+  }
+
+  private void stopDriver () {
+    if (driver != null && driver.isStarted()) {
+      driver.cancel();
+    }
+  }
+
+  private void onFrame () {
+    if (activeCount == 0) {
+      stopDriver();
+      return;
+    }
+    final long now = AnimationUtils.currentAnimationTimeMillis();
+    final long duration = Math.max(this.duration, 1);
+    if (minFrameInterval > 0) {
+      if (now - lastFrameTime < minFrameInterval && !hasFinishingKeys(now, duration)) {
+        return;
+      }
+      lastFrameTime = now;
+    }
+    boolean haveChanges = false;
+    for (int i = activeCount - 1; i >= 0; i--) {
+      int key = activeKeys[i];
+      float toValue = targetOf(key);
+      float fraction = (float) (now - startTimes[key]) / (float) duration;
+      float newValue;
+      if (fraction >= 1f) {
+        newValue = toValue;
+        removeActive(key);
+      } else if (fraction <= 0f) {
+        continue;
+      } else {
+        float fromValue = fromValues[key];
+        float factor = interpolator != null ? interpolator.getInterpolation(fraction) : fraction;
+        newValue = fromValue + (toValue - fromValue) * factor;
+      }
+      if (floatValues[key] != newValue) {
+        floatValues[key] = newValue;
+        haveChanges = true;
+      }
+    }
+    if (haveChanges) {
+      callback.onGroupValuesChanged(this);
+    }
+    if (activeCount == 0) {
+      stopDriver();
+      callback.onGroupAnimationFinished(this);
+    }
+  }
+
+  private boolean hasFinishingKeys (long now, long duration) {
+    for (int i = 0; i < activeCount; i++) {
+      if (now - startTimes[activeKeys[i]] >= duration) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void onValuesChanged () {
+    callback.onGroupValuesChanged(this);
+    if (activeCount == 0) {
+      stopDriver();
+    }
+  }
+}
@@ -27,6 +27,12 @@ import me.vkryl.core.ColorUtils;
 import me.vkryl.core.lambda.FutureFloat;
 import me.vkryl.core.lambda.FutureInt;
 
+/**
+ * {@link AtomicAnimator} for ARGB colors.
+ *
+ * Colors are stored and interpolated as ints, so {@link #getIntValue()} never goes through float bits.
+ * Float value passed to {@link Target} is kept for compatibility and holds raw color bits.
+ */
 public class ColorAnimator extends AtomicAnimator<ColorAnimator.FutureColor> implements FutureInt {
   public interface FutureColor extends FutureFloat, FutureInt {
     @Override
@@ -34,23 +40,121 @@ public class ColorAnimator extends AtomicAnimator<ColorAnimator.FutureColor> imp
       return Float.intBitsToFloat(getIntValue());
     }
   }
+
+  private static class ConstantColor implements FutureColor {
+    private final int color;
+    public ConstantColor (int color) {
+      this.color = color;
+    }
+    @Override
+    public int getIntValue () {
+      return color;
+    }
+  }
+
+  private static class TemporaryColor extends TemporaryValue<FutureColor> implements FutureColor {
+    public TemporaryColor (ColorAnimator animator, FutureFloat fromValue, FutureColor toValue, float factor, int depth) {
+      super(animator, fromValue, toValue, factor, depth);
+    }
+    @Override
+    public int getIntValue () {
+      return ColorUtils.fromToArgb(colorOf(fromValue), toValue.getIntValue(), factor);
+    }
+    @Override
+    public float getFloatValue () {
+      return Float.intBitsToFloat(getIntValue());
+    }
+  }
+
+  private static class BlendColor extends BlendValue implements FutureColor {
+    public BlendColor (FutureFloat[] sources, float[] weights) {
+      super(sources, weights);
+    }
+    @Override
+    public int getIntValue () {
+      float alpha = 0f, red = 0f, green = 0f, blue = 0f;
+      for (int i = 0; i < sources.length; i++) {
+        final int color = colorOf(sources[i]);
+        final float weight = weights[i];
+        alpha += ((color >>> 24) & 0xff) * weight;
+        red += ((color >> 16) & 0xff) * weight;
+        green += ((color >> 8) & 0xff) * weight;
+        blue += (color & 0xff) * weight;
+      }
+      return (channelOf(alpha) << 24) | (channelOf(red) << 16) | (channelOf(green) << 8) | channelOf(blue);
+    }
+    @Override
+    public float getFloatValue () {
+      return Float.intBitsToFloat(getIntValue());
+    }
+    private static int channelOf (float value) {
+      return Math.max(0, Math.min(255, Math.round(value)));
+    }
+  }
+
+  private int lastNotifiedColor;
+
   public ColorAnimator (Target<FutureColor> target, Interpolator interpolator, long duration, @NonNull FutureColor currentValue) {
     super(target, interpolator, duration, currentValue);
+    this.lastNotifiedColor = currentValue.getIntValue();
+  }
+
+  private static int colorOf (FutureFloat value) {
+    // Every value in the chain is either FutureColor, ConstantColor, TemporaryColor or BlendColor
+    return ((FutureInt) value).getIntValue();
+  }
+
+  @Override
+  boolean isLinear () {
+    // fromToArgb interpolates every channel linearly
+    return getClass() == ColorAnimator.class;
+  }
+
+  @Override
+  FutureFloat newBlendValue (FutureFloat[] sources, float[] weights) {
+    return new BlendColor(sources, weights);
+  }
+
+  @Override
+  FutureFloat newConstantValue (FutureFloat value) {
+    return new ConstantColor(colorOf(value));
+  }
+
+  @Override
+  FutureFloat newTemporaryValue (FutureFloat fromValue, FutureColor toValue, float factor, int depth) {
+    return new TemporaryColor(this, fromValue, toValue, factor, depth);
   }
 
   @Override
   protected float interpolate (FutureFloat fromValue, FutureColor toValue, float factor) {
-    return Float.intBitsToFloat(
-      ColorUtils.fromToArgb(
-        Float.floatToRawIntBits(fromValue.getFloatValue()),
-        toValue.getIntValue(),
-        factor
-      )
-    );
+    return Float.intBitsToFloat(ColorUtils.fromToArgb(colorOf(fromValue), toValue.getIntValue(), factor));
+  }
+
+  @Override
+  float computeFloatValue () {
+    return Float.intBitsToFloat(getIntValue());
+  }
+
+  @Override
+  void notifyValueChanged () {
+    // Colors are compared as ints: float view of some colors is NaN, which never equals itself
+    int newColor = getIntValue();
+    if (newColor != lastNotifiedColor) {
+      this.lastNotifiedColor = newColor;
+      notifyTarget(Float.intBitsToFloat(newColor));
+    }
   }
 
   @Override
   public int getIntValue () {
-    return Float.floatToRawIntBits(getFloatValue());
+    if (futureValue != null) {
+      float factor = getFutureFactor();
+      if (factor == 1f) {
+        return futureValue.getIntValue();
+      } else if (factor > 0f) {
+        return ColorUtils.fromToArgb(colorOf(currentValue), futureValue.getIntValue(), factor);
+      }
+    }
+    return colorOf(currentValue);
   }
 }
@@ -17,6 +17,10 @@
 
 package me.vkryl.android.animator;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
@@ -106,6 +110,18 @@ public class CounterAnimator <T extends CounterAnimator.TextDrawable> implements
     public void applyChanges () {
       verticalPosition.set(position);
     }
+
+    @Override
+    public void saveState (AnimatorState state) {
+      state.putInt(position);
+      verticalPosition.saveState(state);
+    }
+
+    @Override
+    public void restoreState (AnimatorState state) {
+      this.position = state.getInt();
+      verticalPosition.restoreState(state);
+    }
   }
 
   private final Callback<T> callback;
@@ -113,22 +129,165 @@ public class CounterAnimator <T extends CounterAnimator.TextDrawable> implements
 
   private long count;
   private boolean hasCounter;
+  private String textRepresentation;
+
+  private long coalesceInterval;
+  private long lastAnimatedUpdateTime;
+  private boolean hasPendingCounter;
+  private long pendingCount;
+  private String pendingTextRepresentation;
+  private Handler handler;
+  private final Runnable pendingCounterRunnable = this::applyPendingCounter;
 
   public CounterAnimator (Callback<T> callback) {
     this.callback = callback;
-    this.animator = new ListAnimator<>(listAnimator -> callback.onItemsChanged(this), AnimatorUtils.DECELERATE_INTERPOLATOR, 180l);
+    this.animator = new ListAnimator<>(new ListAnimator.Callback() {
+      @Override
+      public void onItemsChanged (ListAnimator<?> animator) {
+        callback.onItemsChanged(CounterAnimator.this);
+      }
+
+      @Override
+      public void onFinishMetadataAnimation (ListAnimator<?> animator, boolean applyFuture) {
+        if (applyFuture && hasPendingCounter) {
+          // Animation has finished, show the latest value on the next loop iteration
+          schedulePendingCounter(0);
+        }
+      }
+    }, AnimatorUtils.DECELERATE_INTERPOLATOR, 180l);
   }
 
   public float getWidth () {
     return animator.getMetadata().getTotalWidth();
   }
 
+  /**
+   * Enables coalescing of animated updates.
+   *
+   * When enabled, updates that arrive while counter is being animated are merged,
+   * and only the latest one is displayed once the running animation finishes
+   * or {@code intervalMs} passes since the previously displayed update, whichever comes first.
+   *
+   * @param intervalMs Minimum interval between two animated updates. 0 disables coalescing.
+   */
+  public void setCoalesceInterval (long intervalMs) {
+    this.coalesceInterval = Math.max(0, intervalMs);
+    if (this.coalesceInterval == 0 && hasPendingCounter) {
+      applyPendingCounter();
+    }
+  }
+
+  public long getCoalesceInterval () {
+    return coalesceInterval;
+  }
+
+  public void setCounter (long count, @NonNull CounterFormatter formatter, boolean animated) {
+    setCounter(count, formatter.format(count), animated);
+  }
+
   public void setCounter (long count, String textRepresentation, boolean animated) {
-    setCounterImpl(count, toParts(textRepresentation), animated);
+    if (!hasPendingCounter && isDisplayed(textRepresentation)) {
+      // Visible text doesn't change, no need to touch ListAnimator
+      this.count = count;
+      return;
+    }
+    if (animated && coalesceInterval > 0) {
+      if (hasPendingCounter) {
+        this.pendingCount = count;
+        this.pendingTextRepresentation = textRepresentation;
+        return;
+      }
+      long elapsed = SystemClock.uptimeMillis() - lastAnimatedUpdateTime;
+      if (animator.isAnimating() && elapsed < coalesceInterval) {
+        this.hasPendingCounter = true;
+        this.pendingCount = count;
+        this.pendingTextRepresentation = textRepresentation;
+        schedulePendingCounter(coalesceInterval - elapsed);
+        return;
+      }
+    } else {
+      cancelPendingCounter();
+    }
+    setCounterNow(count, textRepresentation, animated);
   }
 
   public void hideCounter (boolean animated) {
-    setCounterImpl(0, null, animated);
+    cancelPendingCounter();
+    this.textRepresentation = null;
+    setCounterImpl(0, null, false, animated);
+  }
+
+  public void saveState (AnimatorState state) {
+    state.putLong(count);
+    state.putBoolean(hasCounter);
+    animator.saveState(state);
+  }
+
+  /**
+   * Resumes animation saved with {@link #saveState(AnimatorState)}.
+   *
+   * Text is not part of the snapshot: call {@link #setCounter(long, String, boolean)} without animation first.
+   * Parts of the displayed counter continue their animations, parts of the previous counter that were
+   * fading out can't be recreated and disappear immediately (see {@link ListAnimator#restoreState(AnimatorState)}).
+   * If displayed counter differs from the saved one, snapshot is skipped.
+   */
+  public void restoreState (AnimatorState state) {
+    final long count = state.getLong();
+    final boolean hasCounter = state.getBoolean();
+    if (this.count == count && this.hasCounter == hasCounter) {
+      animator.restoreState(state);
+    } else {
+      state.skipRecord(state.readRecord());
+    }
+  }
+
+  private boolean isDisplayed (String textRepresentation) {
+    return hasCounter && !StringUtils.isEmpty(textRepresentation) && textRepresentation.equals(this.textRepresentation);
+  }
+
+  private void setCounterNow (long count, String textRepresentation, boolean animated) {
+    if (isDisplayed(textRepresentation)) {
+      this.count = count;
+      return;
+    }
+    // Text is not displayed, so it differs from the visible one, e.g. same count formatted for another locale
+    final boolean textChanged = hasCounter && !StringUtils.isEmpty(textRepresentation);
+    this.textRepresentation = textRepresentation;
+    if (animated) {
+      lastAnimatedUpdateTime = SystemClock.uptimeMillis();
+    }
+    setCounterImpl(count, toParts(textRepresentation), textChanged, animated);
+  }
+
+  private void schedulePendingCounter (long delay) {
+    if (handler == null) {
+      handler = new Handler(Looper.getMainLooper());
+    }
+    handler.removeCallbacks(pendingCounterRunnable);
+    if (delay > 0) {
+      handler.postDelayed(pendingCounterRunnable, delay);
+    } else {
+      handler.post(pendingCounterRunnable);
+    }
+  }
+
+  private void cancelPendingCounter () {
+    if (hasPendingCounter) {
+      hasPendingCounter = false;
+      pendingTextRepresentation = null;
+      if (handler != null) {
+        handler.removeCallbacks(pendingCounterRunnable);
+      }
+    }
+  }
+
+  private void applyPendingCounter () {
+    if (hasPendingCounter) {
+      long count = this.pendingCount;
+      String textRepresentation = this.pendingTextRepresentation;
+      cancelPendingCounter();
+      setCounterNow(count, textRepresentation, true);
+    }
   }
 
   private List<Part<T>> toParts (String textRepresentation) {
@@ -146,9 +305,9 @@ public class CounterAnimator <T extends CounterAnimator.TextDrawable> implements
     return null;
   }
 
-  private void setCounterImpl (long count, List<Part<T>> parts, boolean animated) {
+  private void setCounterImpl (long count, List<Part<T>> parts, boolean textChanged, boolean animated) {
     final boolean hasCounter = parts != null && !parts.isEmpty();
-    if (this.count != count || this.hasCounter != hasCounter) {
+    if (this.count != count || this.hasCounter != hasCounter || textChanged) {
       final long prevCount = this.count;
       this.count = count;
       this.hasCounter = hasCounter;
@@ -0,0 +1,168 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.animator;
+
+import androidx.annotation.NonNull;
+
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Compact number formatter for {@link CounterAnimator}: 999, 1.2K, 15K, 1.2M, etc.
+ *
+ * Formatter remembers the last visible representation and returns the very same
+ * {@link String} instance while it doesn't change, so repeated updates
+ * (e.g. 1201 → 1202, both displayed as "1.2K") neither render nor allocate anything.
+ */
+public final class CounterFormatter {
+  private static class Symbols {
+    final char zeroDigit, decimalSeparator, minusSign;
+
+    Symbols (Locale locale) {
+      DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+      this.zeroDigit = symbols.getZeroDigit();
+      this.decimalSeparator = symbols.getDecimalSeparator();
+      this.minusSign = symbols.getMinusSign();
+    }
+  }
+
+  private static final HashMap<Locale, Symbols> symbolsCache = new HashMap<>();
+
+  private static Symbols getSymbols (Locale locale) {
+    synchronized (symbolsCache) {
+      Symbols symbols = symbolsCache.get(locale);
+      if (symbols == null) {
+        symbols = new Symbols(locale);
+        symbolsCache.put(locale, symbols);
+      }
+      return symbols;
+    }
+  }
+
+  private static final long[] UNITS = {1_000L, 1_000_000L, 1_000_000_000L, 1_000_000_000_000L};
+  private static final String[] DEFAULT_SUFFIXES = {"K", "M", "B", "T"};
+
+  private final String[] suffixes;
+  private Symbols symbols;
+
+  private final char[] buffer = new char[32];
+
+  private boolean hasLast;
+  private boolean lastNegative, lastHasFraction;
+  private int lastUnit;
+  private long lastValue;
+  private String lastText;
+
+  public CounterFormatter () {
+    this(Locale.getDefault());
+  }
+
+  public CounterFormatter (@NonNull Locale locale) {
+    this(locale, DEFAULT_SUFFIXES);
+  }
+
+  /**
+   * @param suffixes Suffixes for thousands, millions, billions and trillions.
+   */
+  public CounterFormatter (@NonNull Locale locale, @NonNull String[] suffixes) {
+    if (suffixes.length != UNITS.length) {
+      throw new IllegalArgumentException(Integer.toString(suffixes.length));
+    }
+    this.suffixes = suffixes;
+    this.symbols = getSymbols(locale);
+  }
+
+  public void setLocale (@NonNull Locale locale) {
+    Symbols symbols = getSymbols(locale);
+    if (this.symbols != symbols) {
+      this.symbols = symbols;
+      this.hasLast = false;
+      this.lastText = null;
+    }
+  }
+
+  @NonNull
+  public String format (long count) {
+    boolean negative = count < 0;
+    long value = abs(count);
+    int unit = unitOf(value);
+    boolean hasFraction = unit != -1 && hasFraction(value, unit);
+    long visibleValue = unit != -1 ? visibleValue(value, unit) : value;
+
+    if (hasLast && lastNegative == negative && lastUnit == unit && lastHasFraction == hasFraction && lastValue == visibleValue) {
+      return lastText;
+    }
+
+    final char zeroDigit = symbols.zeroDigit;
+    int end = buffer.length;
+    int start = end;
+    if (unit != -1) {
+      String suffix = suffixes[unit];
+      start -= suffix.length();
+      suffix.getChars(0, suffix.length(), buffer, start);
+    }
+    long remaining = visibleValue;
+    if (hasFraction) {
+      int fraction = (int) (remaining % 10);
+      remaining /= 10;
+      if (fraction != 0) {
+        buffer[--start] = (char) (zeroDigit + fraction);
+        buffer[--start] = symbols.decimalSeparator;
+      }
+    }
+    do {
+      buffer[--start] = (char) (zeroDigit + (int) (remaining % 10));
+      remaining /= 10;
+    } while (remaining != 0);
+    if (negative) {
+      buffer[--start] = symbols.minusSign;
+    }
+
+    String text = new String(buffer, start, end - start);
+    this.hasLast = true;
+    this.lastNegative = negative;
+    this.lastUnit = unit;
+    this.lastHasFraction = hasFraction;
+    this.lastValue = visibleValue;
+    this.lastText = text;
+    return text;
+  }
+
+  private static long abs (long value) {
+    return value == Long.MIN_VALUE ? Long.MAX_VALUE : Math.abs(value);
+  }
+
+  private static int unitOf (long value) {
+    for (int unit = UNITS.length - 1; unit >= 0; unit--) {
+      if (value >= UNITS[unit]) {
+        return unit;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean hasFraction (long value, int unit) {
+    return value / UNITS[unit] < 10;
+  }
+
+  // Value displayed before the suffix: in tenths when fraction is displayed (1.2K → 12), truncated otherwise.
+  private static long visibleValue (long value, int unit) {
+    return hasFraction(value, unit) ? value / (UNITS[unit] / 10) : value / UNITS[unit];
+  }
+}
@@ -24,6 +24,7 @@ import android.animation.AnimatorListenerAdapter;
 import android.animation.ValueAnimator;
 import android.os.Build;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.view.animation.Interpolator;
@@ -33,6 +34,7 @@ import androidx.annotation.Nullable;
 
 import me.vkryl.android.AnimatorUtils;
 import me.vkryl.core.BitwiseUtils;
+import me.vkryl.core.MathUtils;
 
 public class FactorAnimator {
   public interface Target {
@@ -54,10 +56,19 @@ public class FactorAnimator {
   private Object objValue;
 
   private float factor, toFactor;
-  private boolean isAnimating;
+  private float fromFactor, factorDiff;
+  private boolean isAnimating, isCountedByGovernor;
   private boolean isBlocked;
   private ValueAnimator animator;
 
+  private boolean retargetByDistance;
+  private float referenceDistance;
+
+  private long minFrameInterval;
+  private long lastFramePlayTime;
+
+  private boolean isDecorative;
+
   private Runnable startRunnable;
 
   public FactorAnimator (int id, Target target, Interpolator interpolator, long duration) {
@@ -114,10 +125,21 @@ public class FactorAnimator {
   }
 
   public boolean cancel () {
+    return cancel(true);
+  }
+
+  /**
+   * @param isIdle False when a new animation is started right after, so {@link AnimationGovernor}
+   * doesn't see the restart as the end of one animation and the start of another one.
+   */
+  private boolean cancel (boolean isIdle) {
     if (isAnimating) {
       if (Looper.myLooper() != Looper.getMainLooper())
         throw new AssertionError();
-      setAnimating(false);
+      this.isAnimating = false;
+      if (isIdle) {
+        setCountedByGovernor(false);
+      }
       if (animator != null) {
         animator.cancel();
         animator = null;
@@ -151,6 +173,33 @@ public class FactorAnimator {
     this.isBlocked = isBlocked;
   }
 
+  /**
+   * When enabled, calling {@link #animateTo(float)} while animation is running
+   * doesn't start a new animation with the full duration. Instead, running animator gets retargeted
+   * and its duration becomes proportional to the remaining distance,
+   * so quickly flipped toggles settle quickly.
+   */
+  public void setRetargetByDistance (boolean retargetByDistance) {
+    this.retargetByDistance = retargetByDistance;
+  }
+
+  /**
+   * Limits how often {@link Target#onFactorChanged} is dispatched while animating,
+   * e.g. to 30 fps for purely decorative effects. Intermediate frames are skipped, final factor is always dispatched.
+   *
+   * @param fps Maximum update rate. 0 removes the limit.
+   */
+  public void setMaxFrameRate (int fps) {
+    this.minFrameInterval = fps > 0 ? 1000 / fps : 0;
+  }
+
+  /**
+   * Marks animation as purely decorative, so {@link AnimationGovernor} can drop it under pressure.
+   */
+  public void setIsDecorative (boolean isDecorative) {
+    this.isDecorative = isDecorative;
+  }
+
   public void animateTo (float toFactor) {
     animateTo(toFactor, null);
   }
@@ -162,8 +211,18 @@ public class FactorAnimator {
   }
 
   private void setAnimating (boolean isAnimating) {
-    if (this.isAnimating != isAnimating) {
-      this.isAnimating = isAnimating;
+    this.isAnimating = isAnimating;
+    setCountedByGovernor(isAnimating);
+  }
+
+  private void setCountedByGovernor (boolean isCounted) {
+    if (this.isCountedByGovernor != isCounted) {
+      this.isCountedByGovernor = isCounted;
+      if (isCounted) {
+        AnimationGovernor.instance().onAnimationStarted();
+      } else {
+        AnimationGovernor.instance().onAnimationFinished();
+      }
     }
   }
 
@@ -173,16 +232,22 @@ public class FactorAnimator {
     }
 
     if (isAnimating) {
-      cancel();
+      if (retargetByDistance && !isBlocked && factor != toFactor && animator != null && animator.isRunning()) {
+        retarget(toFactor);
+        return;
+      }
+      cancel(false);
     }
 
     if (factor == toFactor) {
+      setCountedByGovernor(false);
       invokeStartRunnable();
       target.onFactorChangeFinished(id, factor, this);
       return;
     }
 
     if (isBlocked) {
+      setCountedByGovernor(false);
       this.factor = toFactor;
       invokeStartRunnable();
       target.onFactorChanged(id, factor, 1f, this);
@@ -192,8 +257,9 @@ public class FactorAnimator {
 
     setAnimating(true);
 
-    final float fromFactor = factor;
-    final float factorDiff = toFactor - fromFactor;
+    this.fromFactor = factor;
+    this.factorDiff = toFactor - factor;
+    this.referenceDistance = Math.abs(factorDiff);
 
     long duration = this.duration;
 
@@ -202,6 +268,7 @@ public class FactorAnimator {
         duration = 0;
       }
     }
+    duration = AnimationGovernor.instance().adjustDuration(duration, isDecorative, view);
 
     if (duration <= 0) {
       setFactor(toFactor, 1f);
@@ -212,11 +279,24 @@ public class FactorAnimator {
 
     this.toFactor = toFactor;
 
+    startAnimator(duration, 0, view);
+  }
+
+  private void startAnimator (long duration, long playTime, @Nullable View view) {
+    final boolean isResumed = playTime > 0;
     animator = AnimatorUtils.simpleValueAnimator();
     animator.setDuration(duration);
     animator.setInterpolator(interpolator);
+    lastFramePlayTime = 0;
     animator.addUpdateListener(animation -> {
       if (isAnimating) {
+        if (minFrameInterval > 0) {
+          long currentPlayTime = animation.getCurrentPlayTime();
+          if (currentPlayTime - lastFramePlayTime < minFrameInterval) {
+            return;
+          }
+          lastFramePlayTime = currentPlayTime;
+        }
         float fraction = AnimatorUtils.getFraction(animation);
         setFactor(fromFactor + factorDiff * fraction, fraction);
       }
@@ -224,14 +304,20 @@ public class FactorAnimator {
     animator.addListener(new AnimatorListenerAdapter() {
       @Override
       public void onAnimationStart (Animator animation) {
-        invokeStartRunnable();
+        if (!isResumed) {
+          invokeStartRunnable();
+        }
       }
 
       private void finishAnimation () {
         if (isAnimating) {
           setFactor(fromFactor + factorDiff, 1f);
-          setAnimating(false);
+          isAnimating = false;
           target.onFactorChangeFinished(id, factor, FactorAnimator.this);
+          // Target may chain the next animation, which is not reported to the governor as a new one
+          if (!isAnimating) {
+            setCountedByGovernor(false);
+          }
         }
       }
 
@@ -245,12 +331,16 @@ public class FactorAnimator {
         finishAnimation();
       }
     });
-    if (startDelay != 0) {
+    if (startDelay != 0 && !isResumed) {
       animator.setStartDelay(startDelay);
     }
 
     try {
-      if (view != null) {
+      if (isResumed) {
+        // Seek first, so target doesn't receive fromFactor on start
+        animator.setCurrentPlayTime(playTime);
+        animator.start();
+      } else if (view != null) {
         AnimatorUtils.startAnimator(view, animator);
       } else {
         animator.start();
@@ -261,6 +351,121 @@ public class FactorAnimator {
     }
   }
 
+  private void retarget (float toFactor) {
+    if (this.toFactor == toFactor) {
+      // Running animation already goes there
+      return;
+    }
+    final float remainingDiff = toFactor - factor;
+    long duration = this.duration;
+    if (referenceDistance > 0f && Math.abs(remainingDiff) < referenceDistance) {
+      duration = Math.max(1, (long) (duration * (Math.abs(remainingDiff) / referenceDistance)));
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      if (!ValueAnimator.areAnimatorsEnabled()) {
+        duration = 0;
+      }
+    }
+    duration = AnimationGovernor.instance().adjustDuration(duration, isDecorative, null);
+    if (duration <= 0) {
+      this.toFactor = toFactor;
+      forceFactor(toFactor);
+      return;
+    }
+
+    // Keep current velocity: new animation starts from the point of the curve with the same slope
+    float startFraction = 0f;
+    final long currentDuration = animator.getDuration();
+    if (currentDuration > 0) {
+      final float playFraction = MathUtils.clamp(animator.getCurrentPlayTime() / (float) currentDuration);
+      final float velocity = factorDiff * AnimatorUtils.getSlope(interpolator, playFraction) / currentDuration;
+      startFraction = AnimatorUtils.findStartFraction(interpolator, velocity * duration / remainingDiff);
+    }
+    final long totalDuration = (long) (duration / (1f - startFraction));
+    final long playTime = (long) (totalDuration * startFraction);
+
+    // Restart running animator from the current factor. isAnimating is reset, so cancellation is ignored by listeners.
+    // Governor isn't notified, as for it the animation keeps running
+    this.isAnimating = false;
+    animator.cancel();
+    this.factorDiff = remainingDiff / (1f - AnimatorUtils.getInterpolation(interpolator, startFraction));
+    this.fromFactor = toFactor - factorDiff;
+    this.toFactor = toFactor;
+    this.isAnimating = true;
+    lastFramePlayTime = playTime;
+    animator.setStartDelay(0);
+    animator.setDuration(totalDuration);
+    if (playTime > 0) {
+      // Seek first, so target doesn't receive a jump to the start of the curve
+      animator.setCurrentPlayTime(playTime);
+    }
+    animator.start();
+  }
+
+  /**
+   * Writes current factor and, when animation is running, its target and elapsed time.
+   * Restore with {@link #restoreState(AnimatorState)}.
+   */
+  public void saveState (AnimatorState state) {
+    state.putFloat(factor);
+    if (isAnimating) {
+      long duration = this.duration, playTime = 0;
+      if (animator != null && animator.isStarted()) {
+        duration = animator.getDuration();
+        playTime = Math.max(0, animator.getCurrentPlayTime());
+      }
+      state.putBoolean(true);
+      state.putFloat(fromFactor);
+      state.putFloat(toFactor);
+      state.putLong(duration);
+      state.putLong(playTime);
+      state.putLong(SystemClock.uptimeMillis());
+    } else {
+      state.putBoolean(false);
+    }
+  }
+
+  /**
+   * Restores state written by {@link #saveState(AnimatorState)}.
+   * Animation that was running continues from the same point of its timeline,
+   * taking into account time passed since the snapshot. If it should have already finished,
+   * final factor is applied immediately.
+   */
+  public void restoreState (AnimatorState state) {
+    if (Looper.myLooper() != Looper.getMainLooper()) {
+      throw new AssertionError();
+    }
+    final float factor = state.getFloat();
+    if (!state.getBoolean()) {
+      forceFactor(factor);
+      return;
+    }
+    final float fromFactor = state.getFloat();
+    final float toFactor = state.getFloat();
+    final long duration = state.getLong();
+    final long savedPlayTime = state.getLong();
+    final long savedTime = state.getLong();
+    final long playTime = savedPlayTime + Math.max(0, SystemClock.uptimeMillis() - savedTime);
+
+    boolean animatorsEnabled = true;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      animatorsEnabled = ValueAnimator.areAnimatorsEnabled();
+    }
+    if (isBlocked || !animatorsEnabled || duration <= 0 || playTime >= duration) {
+      forceFactor(toFactor);
+      return;
+    }
+
+    cancel(false);
+    setAnimating(true);
+    this.factor = factor;
+    this.fromFactor = fromFactor;
+    this.factorDiff = toFactor - fromFactor;
+    this.referenceDistance = Math.abs(factorDiff);
+    this.toFactor = toFactor;
+    startAnimator(duration, Math.max(1, playTime), null);
+  }
+
   public float getToFactor () {
     return isAnimating ? toFactor : factor;
   }
@@ -120,6 +120,31 @@ public final class ListAnimator<T> implements Iterable<ListAnimator.Entry<T>> {
       }
     }
 
+    private void saveState (AnimatorState state) {
+      final int record = state.beginRecord();
+      state.putInt(index);
+      state.putBoolean(isBeingRemoved);
+      position.saveState(state);
+      visibility.saveState(state);
+      measuredPositionRect.saveState(state);
+      measuredSpacingStart.saveState(state);
+      if (item instanceof Animatable) {
+        ((Animatable) item).saveState(state);
+      }
+      state.endRecord(record);
+    }
+
+    private void restoreState (AnimatorState state, int recordEnd) {
+      position.restoreState(state);
+      visibility.restoreState(state);
+      measuredPositionRect.restoreState(state);
+      measuredSpacingStart.restoreState(state);
+      if (item instanceof Animatable) {
+        ((Animatable) item).restoreState(state);
+      }
+      state.skipRecord(recordEnd);
+    }
+
     private boolean applyAnimation (float factor) {
       boolean haveChanges;
       haveChanges = position.applyAnimation(factor);
@@ -195,6 +220,24 @@ public final class ListAnimator<T> implements Iterable<ListAnimator.Entry<T>> {
       metadataCallback.onFinishMetadataAnimation(context, applyFuture);
     }
 
+    private void saveState (AnimatorState state) {
+      size.saveState(state);
+      maxItemWidth.saveState(state);
+      maxItemHeight.saveState(state);
+      totalWidth.saveState(state);
+      totalHeight.saveState(state);
+      totalVisibility.saveState(state);
+    }
+
+    private void restoreState (AnimatorState state) {
+      size.restoreState(state);
+      maxItemWidth.restoreState(state);
+      maxItemHeight.restoreState(state);
+      totalWidth.restoreState(state);
+      totalHeight.restoreState(state);
+      totalVisibility.restoreState(state);
+    }
+
     private void setSize (int size, boolean animated) {
       if (animated) {
         this.size.setTo(size);
@@ -278,6 +321,10 @@ public final class ListAnimator<T> implements Iterable<ListAnimator.Entry<T>> {
     return metadata;
   }
 
+  public boolean isAnimating () {
+    return animator != null && animator.isAnimating();
+  }
+
   public void applyAnimation (float factor) {
     boolean haveChanges = metadata.applyAnimation(factor);
     for (Entry<T> entry : entries) {
@@ -324,6 +371,69 @@ public final class ListAnimator<T> implements Iterable<ListAnimator.Entry<T>> {
     }
   }
 
+  /**
+   * Writes positions, visibility, measurements and {@link Animatable} state of all entries
+   * along with the progress of running animation.
+   */
+  public void saveState (AnimatorState state) {
+    final int record = state.beginRecord();
+    state.putInt(actualList.size());
+    state.putInt(entries.size());
+    for (Entry<T> entry : entries) {
+      entry.saveState(state);
+    }
+    metadata.saveState(state);
+    if (animator != null) {
+      animator.saveState(state);
+    }
+    state.endRecord(record);
+  }
+
+  /**
+   * Restores state written by {@link #saveState(AnimatorState)}.
+   *
+   * Items are not part of the snapshot, so list must already contain the final items list,
+   * e.g. after non-animated {@link #reset(List, boolean)} on a rebound view.
+   * Entries are matched with saved ones by index and continue their animations.
+   * Entries that were being removed can't be recreated and disappear immediately.
+   * If entries do not match the snapshot, the record is skipped and list settles in its final state.
+   *
+   * @return True if saved state was applied.
+   */
+  public boolean restoreState (AnimatorState state) {
+    final int recordEnd = state.readRecord();
+    final int actualCount = state.getInt();
+    if (actualCount != actualList.size() || actualList.size() != entries.size()) {
+      state.skipRecord(recordEnd);
+      stopAnimation(true);
+      return false;
+    }
+    final int count = state.getInt();
+    for (int i = 0; i < count; i++) {
+      final int entryEnd = state.readRecord();
+      final int index = state.getInt();
+      final boolean isBeingRemoved = state.getBoolean();
+      if (isBeingRemoved) {
+        state.skipRecord(entryEnd);
+        continue;
+      }
+      Entry<T> entry = actualList.get(index);
+      if (entry.index != index) {
+        throw new IllegalStateException(entry.index + " != " + index);
+      }
+      entry.restoreState(state, entryEnd);
+    }
+    metadata.restoreState(state);
+    if (animator != null) {
+      animator.restoreState(state);
+      if (!animator.isAnimating()) {
+        applyAnimation(animator.getFactor());
+      }
+    }
+    callback.onItemsChanged(this);
+    return true;
+  }
+
   private int indexOfItem (T item) {
     int index = 0;
     if (item == null) {
@@ -646,6 +756,93 @@ public final class ListAnimator<T> implements Iterable<ListAnimator.Entry<T>> {
     onApplyListChanges();
   }
 
+  // Two-slot fast path used by ReplaceAnimator
+
+  private int maxRemovingEntries = Integer.MAX_VALUE;
+
+  void setMaxRemovingEntries (int maxRemovingEntries) {
+    this.maxRemovingEntries = Math.max(0, maxRemovingEntries);
+  }
+
+  @Nullable
+  Entry<T> singletonEntry () {
+    switch (actualList.size()) {
+      case 0:
+        return null;
+      case 1:
+        return actualList.get(0);
+      default:
+        throw new IllegalStateException(); // Should be always either 0, or 1.
+    }
+  }
+
+  boolean isActualListEmpty () {
+    return actualList.isEmpty();
+  }
+
+  void resetSingleton (@Nullable T newItem, boolean animated) {
+    if (!animated) {
+      stopAnimation(false);
+      for (int i = entries.size() - 1; i >= 0; i--) {
+        entries.get(i).onRecycled();
+      }
+      entries.clear();
+      actualList.clear();
+      if (newItem != null) {
+        Entry<T> entry = new Entry<>(newItem, 0, true);
+        entries.add(entry);
+        actualList.add(entry);
+      }
+      metadata.setSize(actualList.size(), false);
+      measureImpl(false);
+      callback.onItemsChanged(this);
+      return;
+    }
+
+    Entry<T> currentEntry = actualList.isEmpty() ? null : actualList.get(0);
+    if (newItem == null ? currentEntry == null : currentEntry != null && newItem.equals(currentEntry.item))
+      return;
+
+    onBeforeListChanged();
+
+    boolean found = false;
+    for (Entry<T> entry : entries) {
+      if (newItem != null && newItem.equals(entry.item)) {
+        found = true;
+        if (entry.visibility.differs(1f)) {
+          entry.onPrepareAppear();
+          actualList.add(entry);
+        }
+      } else if (entry.visibility.differs(0f)) {
+        entry.onPrepareRemove();
+        actualList.remove(entry);
+      }
+    }
+    if (!found && newItem != null) {
+      Entry<T> entry = new Entry<>(newItem, 0, false);
+      entry.onPrepareAppear();
+      entries.add(entry);
+      actualList.add(entry);
+    }
+
+    // Drop the oldest outgoing entries when replacements come faster than they fade out
+    int removingCount = entries.size() - actualList.size();
+    for (int i = 0; i < entries.size() && removingCount > maxRemovingEntries; ) {
+      Entry<T> entry = entries.get(i);
+      if (!entry.isAffectingList()) {
+        entries.remove(i);
+        entry.onRecycled();
+        removingCount--;
+      } else {
+        i++;
+      }
+    }
+
+    metadata.setSize(actualList.size(), true);
+    measureImpl(true);
+    onApplyListChanges();
+  }
+
   public static class MeasurableEntry<T extends Measurable> implements Measurable, Destroyable {
     public final T content;
 
@@ -0,0 +1,141 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.animator;
+
+import android.view.animation.Interpolator;
+
+import androidx.annotation.NonNull;
+
+import me.vkryl.core.ColorUtils;
+
+/**
+ * Animates a whole palette of ARGB colors with a single {@link FactorAnimator}.
+ *
+ * All colors are updated in one loop per frame and {@link Callback#onPaletteChanged} is called once per frame,
+ * instead of having one animator and one listener per color.
+ */
+public final class PaletteAnimator implements FactorAnimator.Target {
+  public interface Callback {
+    void onPaletteChanged (PaletteAnimator animator);
+    default void onPaletteChangeFinished (PaletteAnimator animator) { }
+  }
+
+  private final Callback callback;
+  private final FactorAnimator animator;
+
+  private int[] fromColors, toColors, colors;
+
+  public PaletteAnimator (@NonNull Callback callback, Interpolator interpolator, long duration, @NonNull int[] colors) {
+    this.callback = callback;
+    this.animator = new FactorAnimator(0, this, interpolator, duration);
+    this.colors = colors.clone();
+    this.fromColors = colors.clone();
+    this.toColors = colors.clone();
+  }
+
+  public int size () {
+    return colors.length;
+  }
+
+  /**
+   * @return Current colors. Returned array is reused between frames and must not be modified.
+   */
+  @NonNull
+  public int[] getColors () {
+    return colors;
+  }
+
+  public int getColor (int index) {
+    return colors[index];
+  }
+
+  public boolean isAnimating () {
+    return animator.isAnimating();
+  }
+
+  public void setColors (@NonNull int[] newColors, boolean animated) {
+    if (newColors.length != colors.length) {
+      // Palette size has changed, nothing to interpolate from
+      animator.cancel();
+      animator.forceFactor(0f);
+      this.colors = newColors.clone();
+      this.fromColors = newColors.clone();
+      this.toColors = newColors.clone();
+      callback.onPaletteChanged(this);
+      callback.onPaletteChangeFinished(this);
+      return;
+    }
+    animator.cancel();
+    // Continue from currently displayed colors
+    System.arraycopy(colors, 0, fromColors, 0, colors.length);
+    System.arraycopy(newColors, 0, toColors, 0, newColors.length);
+    animator.forceFactor(0f);
+    if (animated) {
+      animator.animateTo(1f);
+    } else {
+      applyFactor(1f);
+      callback.onPaletteChangeFinished(this);
+    }
+  }
+
+  public void stopAnimation (boolean applyFuture) {
+    if (animator.isAnimating()) {
+      animator.cancel();
+      if (applyFuture) {
+        applyFactor(1f);
+      }
+      animator.forceFactor(0f);
+      callback.onPaletteChangeFinished(this);
+    }
+  }
+
+  private boolean applyFactor (float factor) {
+    final int[] fromColors = this.fromColors, toColors = this.toColors, colors = this.colors;
+    boolean haveChanges = false;
+    for (int i = 0; i < colors.length; i++) {
+      int fromColor = fromColors[i];
+      int toColor = toColors[i];
+      int color = fromColor == toColor || factor == 1f ? toColor : ColorUtils.fromToArgb(fromColor, toColor, factor);
+      if (colors[i] != color) {
+        colors[i] = color;
+        haveChanges = true;
+      }
+    }
+    if (haveChanges) {
+      callback.onPaletteChanged(this);
+    }
+    return haveChanges;
+  }
+
+  @Override
+  public void onFactorChanged (int id, float factor, float fraction, FactorAnimator callee) {
+    if (callee.isAnimating()) {
+      applyFactor(factor);
+    }
+  }
+
+  @Override
+  public void onFactorChangeFinished (int id, float finalFactor, FactorAnimator callee) {
+    if (finalFactor == 1f) {
+      applyFactor(1f);
+      System.arraycopy(toColors, 0, fromColors, 0, toColors.length);
+      callee.forceFactor(0f);
+      callback.onPaletteChangeFinished(this);
+    }
+  }
+}
@@ -21,7 +21,6 @@ import android.view.animation.Interpolator;
 
 import androidx.annotation.NonNull;
 
-import java.util.Collections;
 import java.util.Iterator;
 
 public class ReplaceAnimator<T> implements Iterable<ListAnimator.Entry<T>> {
@@ -79,22 +78,20 @@ public class ReplaceAnimator<T> implements Iterable<ListAnimator.Entry<T>> {
     }, interpolator, duration);
   }
 
+  /**
+   * Limits the number of items that keep fading out when replacements come faster than they disappear.
+   * Older outgoing items beyond the limit are removed immediately. By default, the number is not limited.
+   */
+  public void setMaxRemovingItems (int maxRemovingItems) {
+    this.list.setMaxRemovingEntries(maxRemovingItems);
+  }
+
   public void replace (T item, boolean animated) {
-    this.list.reset(item != null ? Collections.singletonList(item) : null, animated);
+    this.list.resetSingleton(item, animated);
   }
 
   public ListAnimator.Entry<T> singleton () {
-    ListAnimator.Entry<T> singleton = null;
-    for (ListAnimator.Entry<T> entry : this.list) {
-      if (entry.isAffectingList()) {
-        if (singleton == null) {
-          singleton = entry;
-        } else {
-          throw new IllegalStateException(); // Should be always either 0, or 1.
-        }
-      }
-    }
-    return singleton;
+    return this.list.singletonEntry();
   }
 
   public T singletonItem () {
@@ -103,7 +100,7 @@ public class ReplaceAnimator<T> implements Iterable<ListAnimator.Entry<T>> {
   }
 
   public boolean isEmpty () {
-    return singleton() == null;
+    return this.list.isActualListEmpty();
   }
 
   public ListAnimator.Metadata getMetadata () {
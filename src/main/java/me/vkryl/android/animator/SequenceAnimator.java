@@ -0,0 +1,199 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.animator;
+
+import android.view.View;
+import android.view.animation.Interpolator;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+import me.vkryl.android.AnimatorUtils;
+
+/**
+ * Keyframe timeline: ordered segments (target value, duration, interpolator) evaluated from a single clock.
+ *
+ * Replaces chaining {@link FactorAnimator.Target#onFactorChangeFinished} callbacks
+ * that reconfigure interpolator and duration for multi-stage effects (e.g. pulse, then fade).
+ * Nothing gets allocated when animation moves from one segment to another.
+ */
+public final class SequenceAnimator implements FactorAnimator.Target {
+  public interface Target {
+    void onSequenceValueChanged (SequenceAnimator animator, float value);
+    default void onSequenceFinished (SequenceAnimator animator, boolean byEnd) { }
+  }
+
+  private final Target target;
+  private final FactorAnimator animator;
+
+  private float startValue;
+  private int segmentCount;
+  private float[] values = new float[2];
+  private long[] endTimes = new long[2]; // End time of each segment since the start of the sequence
+  private Interpolator[] interpolators = new Interpolator[2];
+
+  private float value;
+  private int segmentIndex;
+
+  public SequenceAnimator (@NonNull Target target, float startValue) {
+    this.target = target;
+    this.startValue = this.value = startValue;
+    this.animator = new FactorAnimator(0, this, AnimatorUtils.LINEAR_INTERPOLATOR, 0);
+  }
+
+  public SequenceAnimator addSegment (float toValue, long duration, @Nullable Interpolator interpolator) {
+    if (duration < 0)
+      throw new IllegalArgumentException(Long.toString(duration));
+    if (segmentCount == values.length) {
+      int capacity = segmentCount * 2;
+      values = Arrays.copyOf(values, capacity);
+      endTimes = Arrays.copyOf(endTimes, capacity);
+      interpolators = Arrays.copyOf(interpolators, capacity);
+    }
+    values[segmentCount] = toValue;
+    endTimes[segmentCount] = getTotalDuration() + duration;
+    interpolators[segmentCount] = interpolator;
+    segmentCount++;
+    return this;
+  }
+
+  /**
+   * Removes all segments and stops running animation.
+   */
+  public void reset (float startValue) {
+    animator.cancel();
+    animator.forceFactor(0f);
+    Arrays.fill(interpolators, 0, segmentCount, null);
+    this.segmentCount = 0;
+    this.segmentIndex = 0;
+    this.startValue = startValue;
+    setValue(startValue);
+  }
+
+  public int getSegmentCount () {
+    return segmentCount;
+  }
+
+  public long getTotalDuration () {
+    return segmentCount > 0 ? endTimes[segmentCount - 1] : 0;
+  }
+
+  public float getValue () {
+    return value;
+  }
+
+  public int getSegmentIndex () {
+    return segmentIndex;
+  }
+
+  public boolean isAnimating () {
+    return animator.isAnimating();
+  }
+
+  /**
+   * @see FactorAnimator#setMaxFrameRate(int)
+   */
+  public void setMaxFrameRate (int fps) {
+    animator.setMaxFrameRate(fps);
+  }
+
+  public void start () {
+    start(null);
+  }
+
+  /**
+   * Plays sequence from the current position till the end.
+   */
+  public void start (@Nullable View view) {
+    final long totalDuration = getTotalDuration();
+    float factor = animator.getFactor();
+    if (factor == 1f) {
+      animator.forceFactor(factor = 0f);
+    }
+    animator.setDuration((long) (totalDuration * (1f - factor)));
+    animator.animateTo(1f, view);
+  }
+
+  /**
+   * Moves to the given position without animation. Running animation gets stopped.
+   */
+  public void seekTo (long time) {
+    final long totalDuration = getTotalDuration();
+    animator.cancel();
+    animator.forceFactor(totalDuration > 0 ? Math.max(0, Math.min(time, totalDuration)) / (float) totalDuration : 1f);
+    applyFactor(animator.getFactor());
+  }
+
+  public void cancel () {
+    if (animator.isAnimating()) {
+      animator.cancel();
+      target.onSequenceFinished(this, false);
+    }
+  }
+
+  private void setValue (float value) {
+    if (this.value != value) {
+      this.value = value;
+      target.onSequenceValueChanged(this, value);
+    }
+  }
+
+  private void applyFactor (float factor) {
+    if (segmentCount == 0) {
+      setValue(startValue);
+      return;
+    }
+    final long totalDuration = getTotalDuration();
+    final float time = factor * totalDuration;
+    // Usually animation moves forward, so start looking from the current segment
+    int index = Math.min(segmentIndex, segmentCount - 1);
+    while (index > 0 && time < endTimes[index - 1]) {
+      index--;
+    }
+    while (index < segmentCount - 1 && time > endTimes[index]) {
+      index++;
+    }
+    this.segmentIndex = index;
+
+    final long segmentStart = index > 0 ? endTimes[index - 1] : 0;
+    final long segmentDuration = endTimes[index] - segmentStart;
+    final float fromValue = index > 0 ? values[index - 1] : startValue;
+    final float toValue = values[index];
+    float fraction = segmentDuration > 0 ? Math.max(0f, Math.min(1f, (time - segmentStart) / segmentDuration)) : 1f;
+    final Interpolator interpolator = interpolators[index];
+    if (interpolator != null && fraction > 0f && fraction < 1f) {
+      fraction = interpolator.getInterpolation(fraction);
+    }
+    setValue(fromValue + (toValue - fromValue) * fraction);
+  }
+
+  @Override
+  public void onFactorChanged (int id, float factor, float fraction, FactorAnimator callee) {
+    applyFactor(factor);
+  }
+
+  @Override
+  public void onFactorChangeFinished (int id, float finalFactor, FactorAnimator callee) {
+    if (finalFactor == 1f) {
+      applyFactor(1f);
+      target.onSequenceFinished(this, true);
+    }
+  }
+}
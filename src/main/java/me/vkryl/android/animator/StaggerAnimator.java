@@ -0,0 +1,206 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.animator;
+
+import android.view.View;
+import android.view.animation.Interpolator;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+import me.vkryl.android.AnimatorUtils;
+import me.vkryl.core.MathUtils;
+
+/**
+ * Animates N targets on a single shared timeline, e.g. staggered list entrance.
+ *
+ * Each target has its own offset and duration within the timeline.
+ * Only one {@link FactorAnimator} is running regardless of the amount of targets,
+ * and all factors are computed from its clock in one loop.
+ */
+public final class StaggerAnimator implements FactorAnimator.Target {
+  public interface Target {
+    void onStaggerFactorsChanged (StaggerAnimator animator);
+    default void onStaggerFinished (StaggerAnimator animator, float finalFactor) { }
+  }
+
+  private final Target target;
+  private final FactorAnimator animator;
+  private Interpolator interpolator;
+
+  private int count;
+  private long[] offsets, durations;
+  private float[] factors;
+  private long totalDuration;
+
+  public StaggerAnimator (@NonNull Target target, @Nullable Interpolator interpolator, int count) {
+    this.target = target;
+    this.interpolator = interpolator;
+    this.animator = new FactorAnimator(0, this, AnimatorUtils.LINEAR_INTERPOLATOR, 0);
+    this.offsets = new long[count];
+    this.durations = new long[count];
+    this.factors = new float[count];
+    this.count = count;
+  }
+
+  public void setInterpolator (@Nullable Interpolator interpolator) {
+    this.interpolator = interpolator;
+  }
+
+  public int getCount () {
+    return count;
+  }
+
+  public void setCount (int count) {
+    if (count > factors.length) {
+      offsets = Arrays.copyOf(offsets, count);
+      durations = Arrays.copyOf(durations, count);
+      factors = Arrays.copyOf(factors, count);
+    }
+    final int prevCount = this.count;
+    if (count > prevCount) {
+      for (int i = prevCount; i < count; i++) {
+        offsets[i] = durations[i] = 0;
+      }
+    }
+    this.count = count;
+    updateTotalDuration();
+    if (count > prevCount) {
+      final float timelineFactor = animator.getFactor();
+      final float time = timelineFactor * totalDuration;
+      for (int i = prevCount; i < count; i++) {
+        factors[i] = factorAt(i, timelineFactor, time);
+      }
+    }
+  }
+
+  public void setTiming (int index, long offset, long duration) {
+    checkIndex(index);
+    if (offset < 0 || duration < 0)
+      throw new IllegalArgumentException();
+    offsets[index] = offset;
+    durations[index] = duration;
+    updateTotalDuration();
+  }
+
+  /**
+   * Sets timing of all targets: each next target starts {@code step} ms after the previous one.
+   */
+  public void setStaggeredTiming (long step, long duration) {
+    if (step < 0 || duration < 0)
+      throw new IllegalArgumentException();
+    for (int i = 0; i < count; i++) {
+      offsets[i] = step * i;
+      durations[i] = duration;
+    }
+    updateTotalDuration();
+  }
+
+  public long getTotalDuration () {
+    return totalDuration;
+  }
+
+  public float getFactor (int index) {
+    checkIndex(index);
+    return factors[index];
+  }
+
+  public boolean isAnimating () {
+    return animator.isAnimating();
+  }
+
+  /**
+   * @see FactorAnimator#setMaxFrameRate(int)
+   */
+  public void setMaxFrameRate (int fps) {
+    animator.setMaxFrameRate(fps);
+  }
+
+  public void animateTo (float toFactor) {
+    animateTo(toFactor, null);
+  }
+
+  /**
+   * Plays the timeline from the current position, so reversed or retargeted animation
+   * keeps the same speed and only plays the remaining part of each target's timing.
+   */
+  public void animateTo (float toFactor, @Nullable View view) {
+    animator.setDuration((long) (totalDuration * Math.abs(toFactor - animator.getFactor())));
+    animator.animateTo(toFactor, view);
+  }
+
+  public void forceFactor (float factor) {
+    // Factors get applied in onFactorChangeFinished
+    animator.forceFactor(factor);
+  }
+
+  public void cancel () {
+    animator.cancel();
+  }
+
+  private void checkIndex (int index) {
+    if (index < 0 || index >= count)
+      throw new IndexOutOfBoundsException(Integer.toString(index));
+  }
+
+  private void updateTotalDuration () {
+    long totalDuration = 0;
+    for (int i = 0; i < count; i++) {
+      totalDuration = Math.max(totalDuration, offsets[i] + durations[i]);
+    }
+    this.totalDuration = totalDuration;
+    animator.setDuration(totalDuration);
+  }
+
+  private void applyTime (float timelineFactor) {
+    final float time = timelineFactor * totalDuration;
+    boolean haveChanges = false;
+    for (int i = 0; i < count; i++) {
+      float factor = factorAt(i, timelineFactor, time);
+      if (factors[i] != factor) {
+        factors[i] = factor;
+        haveChanges = true;
+      }
+    }
+    if (haveChanges) {
+      target.onStaggerFactorsChanged(this);
+    }
+  }
+
+  private float factorAt (int index, float timelineFactor, float time) {
+    long duration = durations[index];
+    float fraction = duration > 0 ?
+      MathUtils.clamp((time - offsets[index]) / duration) :
+      (time >= offsets[index] && timelineFactor > 0f ? 1f : 0f);
+    final Interpolator interpolator = this.interpolator;
+    return interpolator != null && fraction > 0f && fraction < 1f ? interpolator.getInterpolation(fraction) : fraction;
+  }
+
+  @Override
+  public void onFactorChanged (int id, float factor, float fraction, FactorAnimator callee) {
+    applyTime(factor);
+  }
+
+  @Override
+  public void onFactorChangeFinished (int id, float finalFactor, FactorAnimator callee) {
+    applyTime(finalFactor);
+    target.onStaggerFinished(this, finalFactor);
+  }
+}
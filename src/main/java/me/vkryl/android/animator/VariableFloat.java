@@ -53,6 +53,18 @@ public class VariableFloat {
     }
   }
 
+  public void saveState (AnimatorState state) {
+    state.putFloat(now);
+    state.putFloat(from);
+    state.putFloat(to);
+  }
+
+  public void restoreState (AnimatorState state) {
+    this.now = state.getFloat();
+    this.from = state.getFloat();
+    this.to = state.getFloat();
+  }
+
   public boolean applyAnimation (float changeFactor) {
     float newValue = from + (to - from) * changeFactor;
     if (this.now != newValue) {
@@ -0,0 +1,198 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.animator;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Primitive array version of {@link VariableFloat}.
+ *
+ * After each {@link #applyAnimation(float)} call, indexes of changed values
+ * can be checked via {@link #isChanged(int)} or {@link #getChangedBits()}.
+ * When used as {@link ListAnimator} item, values set via {@code setPending} get animated on the next measure.
+ */
+public class VariableFloatArray implements Animatable {
+  private final float[] now, from, to, pending;
+  private final long[] changed;
+
+  public VariableFloatArray (int size) {
+    this.now = new float[size];
+    this.from = new float[size];
+    this.to = new float[size];
+    this.pending = new float[size];
+    this.changed = new long[(size + 63) >>> 6];
+  }
+
+  public VariableFloatArray (@NonNull float[] values) {
+    this(values.length);
+    set(values);
+  }
+
+  public int size () {
+    return now.length;
+  }
+
+  public float get (int index) {
+    return now[index];
+  }
+
+  public void set (int index, float value) {
+    this.now[index] = this.to[index] = this.from[index] = this.pending[index] = value;
+  }
+
+  public void set (@NonNull float[] values) {
+    checkSize(values);
+    System.arraycopy(values, 0, now, 0, now.length);
+    System.arraycopy(values, 0, from, 0, from.length);
+    System.arraycopy(values, 0, to, 0, to.length);
+    System.arraycopy(values, 0, pending, 0, pending.length);
+  }
+
+  public void setFrom (int index, float from) {
+    this.from[index] = from;
+  }
+
+  public void setTo (int index, float to) {
+    this.to[index] = this.pending[index] = to;
+  }
+
+  public void setTo (@NonNull float[] values) {
+    checkSize(values);
+    System.arraycopy(values, 0, to, 0, to.length);
+    System.arraycopy(values, 0, pending, 0, pending.length);
+  }
+
+  /**
+   * Sets value that becomes the target on the next {@link ListAnimator} measure,
+   * the same way {@code position} of {@link CounterAnimator.Part} does.
+   */
+  public void setPending (int index, float value) {
+    this.pending[index] = value;
+  }
+
+  public void setPending (@NonNull float[] values) {
+    checkSize(values);
+    System.arraycopy(values, 0, pending, 0, pending.length);
+  }
+
+  public boolean differs (int index, float future) {
+    return to[index] != future;
+  }
+
+  public boolean differs (@NonNull float[] future) {
+    checkSize(future);
+    for (int i = 0; i < to.length; i++) {
+      if (to[i] != future[i])
+        return true;
+    }
+    return false;
+  }
+
+  public boolean isChanged (int index) {
+    return (changed[index >>> 6] & (1L << index)) != 0;
+  }
+
+  /**
+   * @return Bitmask of values changed by the last {@link #applyAnimation(float)} call.
+   * Returned array is reused and must not be modified.
+   */
+  @NonNull
+  public long[] getChangedBits () {
+    return changed;
+  }
+
+  private void checkSize (float[] values) {
+    if (values.length != now.length)
+      throw new IllegalArgumentException(values.length + " != " + now.length);
+  }
+
+  /**
+   * @return True when any value set via {@link #setPending(int, float)} differs from the current target,
+   * so {@link ListAnimator} starts an animation for it.
+   */
+  @Override
+  public boolean hasChanges () {
+    for (int i = 0; i < to.length; i++) {
+      if (pending[i] != to[i])
+        return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void prepareChanges () {
+    System.arraycopy(pending, 0, to, 0, to.length);
+  }
+
+  @Override
+  public void applyChanges () {
+    set(pending);
+  }
+
+  @Override
+  public void saveState (AnimatorState state) {
+    state.putInt(now.length);
+    for (int i = 0; i < now.length; i++) {
+      state.putFloat(now[i]);
+      state.putFloat(from[i]);
+      state.putFloat(to[i]);
+      state.putFloat(pending[i]);
+    }
+  }
+
+  @Override
+  public void restoreState (AnimatorState state) {
+    final int size = state.getInt();
+    if (size != now.length) {
+      throw new IllegalStateException(size + " != " + now.length);
+    }
+    for (int i = 0; i < size; i++) {
+      now[i] = state.getFloat();
+      from[i] = state.getFloat();
+      to[i] = state.getFloat();
+      pending[i] = state.getFloat();
+    }
+  }
+
+  @Override
+  public void finishAnimation (boolean future) {
+    if (future) {
+      System.arraycopy(to, 0, now, 0, now.length);
+      System.arraycopy(to, 0, from, 0, from.length);
+    } else {
+      System.arraycopy(now, 0, from, 0, from.length);
+    }
+  }
+
+  @Override
+  public boolean applyAnimation (float changeFactor) {
+    Arrays.fill(changed, 0);
+    boolean haveChanges = false;
+    for (int i = 0; i < now.length; i++) {
+      float newValue = from[i] + (to[i] - from[i]) * changeFactor;
+      if (now[i] != newValue) {
+        now[i] = newValue;
+        changed[i >>> 6] |= 1L << i;
+        haveChanges = true;
+      }
+    }
+    return haveChanges;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.animator;
+
+/**
+ * Array of animated 2D points, backed by a single {@link VariableFloatArray}.
+ */
+public class VariablePointArray implements Animatable {
+  private final VariableFloatArray values;
+
+  public VariablePointArray (int size) {
+    this.values = new VariableFloatArray(size * 2);
+  }
+
+  public int size () {
+    return values.size() / 2;
+  }
+
+  public float getX (int index) {
+    return values.get(index * 2);
+  }
+
+  public float getY (int index) {
+    return values.get(index * 2 + 1);
+  }
+
+  public void set (int index, float x, float y) {
+    values.set(index * 2, x);
+    values.set(index * 2 + 1, y);
+  }
+
+  public void setFrom (int index, float x, float y) {
+    values.setFrom(index * 2, x);
+    values.setFrom(index * 2 + 1, y);
+  }
+
+  public void setTo (int index, float x, float y) {
+    values.setTo(index * 2, x);
+    values.setTo(index * 2 + 1, y);
+  }
+
+  public void setPending (int index, float x, float y) {
+    values.setPending(index * 2, x);
+    values.setPending(index * 2 + 1, y);
+  }
+
+  public boolean differs (int index, float x, float y) {
+    return values.differs(index * 2, x) || values.differs(index * 2 + 1, y);
+  }
+
+  public boolean isChanged (int index) {
+    return values.isChanged(index * 2) || values.isChanged(index * 2 + 1);
+  }
+
+  @Override
+  public boolean hasChanges () {
+    return values.hasChanges();
+  }
+
+  @Override
+  public void prepareChanges () {
+    values.prepareChanges();
+  }
+
+  @Override
+  public void applyChanges () {
+    values.applyChanges();
+  }
+
+  @Override
+  public void saveState (AnimatorState state) {
+    values.saveState(state);
+  }
+
+  @Override
+  public void restoreState (AnimatorState state) {
+    values.restoreState(state);
+  }
+
+  @Override
+  public void finishAnimation (boolean applyFutureState) {
+    values.finishAnimation(applyFutureState);
+  }
+
+  @Override
+  public boolean applyAnimation (float factor) {
+    return values.applyAnimation(factor);
+  }
+}
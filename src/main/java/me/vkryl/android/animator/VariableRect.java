@@ -73,6 +73,20 @@ public class VariableRect implements Animatable {
     return rectF;
   }
 
+  public void saveState (AnimatorState state) {
+    this.left.saveState(state);
+    this.top.saveState(state);
+    this.right.saveState(state);
+    this.bottom.saveState(state);
+  }
+
+  public void restoreState (AnimatorState state) {
+    this.left.restoreState(state);
+    this.top.restoreState(state);
+    this.right.restoreState(state);
+    this.bottom.restoreState(state);
+  }
+
   @Override
   public void finishAnimation (boolean applyFutureState) {
     this.left.finishAnimation(applyFutureState);
@@ -0,0 +1,144 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.html;
+
+import android.text.Html;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * LRU cache of {@link HtmlParser#fromHtml} results, bounded by approximate size in bytes.
+ *
+ * Results are stored as immutable {@link SpannedString}, so the same instance may be shared between views.
+ * Entries are keyed by source text, identity of {@link Html.ImageGetter} and {@link HtmlParser.TagHandler}
+ * and a version number, which should be changed whenever handlers start producing different output for the same source
+ * (e.g. after theme change). Cache keeps strong references to handlers until corresponding entries are evicted.
+ */
+public final class HtmlCache {
+  private static final int CHAR_SIZE = 2;
+  private static final int ENTRY_OVERHEAD = 96;
+  private static final int SPAN_OVERHEAD = 48;
+
+  private static final class Key {
+    private final String html;
+    private final Html.ImageGetter imageGetter;
+    private final HtmlParser.TagHandler tagHandler;
+    private final int version;
+    private final int hashCode;
+
+    private Key (String html, Html.ImageGetter imageGetter, HtmlParser.TagHandler tagHandler, int version) {
+      this.html = html;
+      this.imageGetter = imageGetter;
+      this.tagHandler = tagHandler;
+      this.version = version;
+      int result = html.hashCode();
+      result = 31 * result + System.identityHashCode(imageGetter);
+      result = 31 * result + System.identityHashCode(tagHandler);
+      result = 31 * result + version;
+      this.hashCode = result;
+    }
+
+    @Override
+    public boolean equals (Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return hashCode == other.hashCode &&
+        version == other.version &&
+        imageGetter == other.imageGetter &&
+        tagHandler == other.tagHandler &&
+        html.equals(other.html);
+    }
+
+    @Override
+    public int hashCode () {
+      return hashCode;
+    }
+  }
+
+  private final LruCache<Key, Spanned> cache;
+
+  /**
+   * @param maxSizeBytes Approximate amount of memory occupied by cached sources and results.
+   */
+  public HtmlCache (int maxSizeBytes) {
+    this.cache = new LruCache<Key, Spanned>(maxSizeBytes) {
+      @Override
+      protected int sizeOf (@NonNull Key key, @NonNull Spanned value) {
+        return estimateSize(key.html, value);
+      }
+    };
+  }
+
+  private static int estimateSize (String html, Spanned text) {
+    int spanCount = text.getSpans(0, text.length(), Object.class).length;
+    return ENTRY_OVERHEAD + (html.length() + text.length()) * CHAR_SIZE + spanCount * SPAN_OVERHEAD;
+  }
+
+  public Spanned fromHtml (@NonNull String html, @Nullable Html.ImageGetter imageGetter, @Nullable HtmlParser.TagHandler handler) {
+    return fromHtml(html, imageGetter, handler, 0);
+  }
+
+  public Spanned fromHtml (@NonNull String html, @Nullable Html.ImageGetter imageGetter, @Nullable HtmlParser.TagHandler handler, int version) {
+    Key key = new Key(html, imageGetter, handler, version);
+    Spanned result = cache.get(key);
+    if (result == null) {
+      result = new SpannedString(HtmlParser.fromHtml(html, imageGetter, handler));
+      cache.put(key, result);
+    }
+    return result;
+  }
+
+  public void evictAll () {
+    cache.evictAll();
+  }
+
+  public void trimToSize (int maxSizeBytes) {
+    cache.trimToSize(maxSizeBytes);
+  }
+
+  public int size () {
+    return cache.size();
+  }
+
+  public int maxSize () {
+    return cache.maxSize();
+  }
+
+  public int hitCount () {
+    return cache.hitCount();
+  }
+
+  public int missCount () {
+    return cache.missCount();
+  }
+
+  public int evictionCount () {
+    return cache.evictionCount();
+  }
+
+  @NonNull
+  @Override
+  public String toString () {
+    return cache.toString();
+  }
+}
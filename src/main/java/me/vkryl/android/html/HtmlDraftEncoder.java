@@ -0,0 +1,299 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.html;
+
+import android.text.Editable;
+import android.text.NoCopySpan;
+import android.text.SpanWatcher;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.TextWatcher;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Incremental {@link HtmlEncoder} for drafts that are being edited.
+ *
+ * Text is split into regions at paragraph ends that are not crossed by any span,
+ * and each region is encoded separately. Output is the same as of encoding the whole text, except that
+ * with {@link HtmlEncoder#FLAG_MERGE_TAGS} tags are not merged across region boundaries,
+ * and zero-length spans at region boundaries, which {@link HtmlEncoder} attaches to the whole neighbouring segments,
+ * are limited to their region.
+ * Encoded regions are cached. Edits reported via {@link TextWatcher} and span changes reported via {@link SpanWatcher}
+ * invalidate only affected regions, and {@link #encode(CharSequence)} re-encodes them and splices the result,
+ * so the cost scales with the size of the edit rather than the size of the draft.
+ *
+ * Attach with {@link #attach(Spannable)} to receive both kinds of notifications.
+ * Any other text passed to {@link #encode(CharSequence)} is encoded at once, without caching.
+ */
+public final class HtmlDraftEncoder<T> implements TextWatcher, SpanWatcher, NoCopySpan {
+  private static final class Region {
+    private int start, end;
+    private String html;
+    private int tagCount;
+
+    private Region (int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    private boolean isDirty () {
+      return html == null;
+    }
+  }
+
+  private final Class<T> spanKind;
+  private final HtmlEncoder.SpanHandler<T> spanHandler;
+  private final int flags;
+
+  private final ArrayList<Region> regions = new ArrayList<>();
+  private HtmlEncoder.EncodeResult result;
+  private Spannable attachedText;
+
+  // Spans placed after the last edit, which SpannableStringBuilder reports as changed right after onTextChanged
+  private final Set<Object> shiftingSpans = Collections.newSetFromMap(new IdentityHashMap<>());
+  private int lastEditDelta;
+
+  public HtmlDraftEncoder (@NonNull Class<T> spanKind, @NonNull HtmlEncoder.SpanHandler<T> spanHandler) {
+    this(spanKind, spanHandler, 0);
+  }
+
+  public HtmlDraftEncoder (@NonNull Class<T> spanKind, @NonNull HtmlEncoder.SpanHandler<T> spanHandler, int flags) {
+    this.spanKind = spanKind;
+    this.spanHandler = spanHandler;
+    this.flags = flags;
+  }
+
+  public void attach (@NonNull Spannable text) {
+    if (attachedText != null && attachedText != text) {
+      attachedText.removeSpan(this);
+    }
+    invalidate();
+    attachedText = text;
+    text.setSpan(this, 0, text.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+  }
+
+  public void detach (@NonNull Spannable text) {
+    text.removeSpan(this);
+    if (attachedText == text) {
+      attachedText = null;
+    }
+    invalidate();
+  }
+
+  /**
+   * Drops all cached regions, e.g. when draft is replaced with a different one.
+   */
+  public void invalidate () {
+    regions.clear();
+    shiftingSpans.clear();
+    result = null;
+  }
+
+  public void invalidate (int start, int end) {
+    if (regions.isEmpty()) {
+      return;
+    }
+    for (Region region : regions) {
+      if (region.end >= start && region.start <= end) {
+        region.html = null;
+        result = null;
+      }
+    }
+  }
+
+  @NonNull
+  public HtmlEncoder.EncodeResult encode (@NonNull CharSequence text) {
+    if (text != attachedText) {
+      // Cached regions describe the attached text only
+      return HtmlEncoder.toHtml(text, 0, text.length(), spanKind, spanHandler, flags);
+    }
+    // Notifications of the last edit are over
+    shiftingSpans.clear();
+    final int length = text.length();
+    if (regions.isEmpty() || regions.get(regions.size() - 1).end != length) {
+      // Not attached or changes were missed
+      regions.clear();
+      regions.add(new Region(0, length));
+      result = null;
+    }
+    if (result != null) {
+      return result;
+    }
+
+    final Spanned spanned = (Spanned) text;
+    for (int index = 0; index < regions.size(); ) {
+      Region region = regions.get(index);
+      if (!region.isDirty()) {
+        index++;
+        continue;
+      }
+      int lastIndex = index;
+      while (lastIndex + 1 < regions.size() && regions.get(lastIndex + 1).isDirty()) {
+        lastIndex++;
+      }
+      final int start = region.start;
+      final int end = regions.get(lastIndex).end;
+      regions.subList(index, lastIndex + 1).clear();
+      index += splitAndEncode(spanned, start, end, index);
+    }
+
+    int htmlLength = 0;
+    for (Region region : regions) {
+      htmlLength += region.html.length();
+    }
+    StringBuilder out = new StringBuilder(htmlLength);
+    int tagCount = 0;
+    for (Region region : regions) {
+      out.append(region.html);
+      tagCount += region.tagCount;
+    }
+    result = new HtmlEncoder.EncodeResult(out.toString(), tagCount);
+    return result;
+  }
+
+  private int splitAndEncode (Spanned text, int start, int end, int index) {
+    int count = 0;
+    int regionStart = start;
+    for (int i = start; i < end - 1; i++) {
+      if (text.charAt(i) == '\n' && !isCrossedBySpan(text, i + 1)) {
+        regions.add(index + count, encodeRegion(text, regionStart, i + 1));
+        count++;
+        regionStart = i + 1;
+      }
+    }
+    regions.add(index + count, encodeRegion(text, regionStart, end));
+    return count + 1;
+  }
+
+  private boolean isCrossedBySpan (Spanned text, int position) {
+    T[] spans = text.getSpans(position, position, spanKind);
+    if (spans != null) {
+      for (T span : spans) {
+        if (text.getSpanStart(span) < position && text.getSpanEnd(span) > position && (text.getSpanFlags(span) & Spanned.SPAN_COMPOSING) == 0) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private Region encodeRegion (Spanned text, int start, int end) {
+    Region region = new Region(start, end);
+    StringBuilder out = new StringBuilder();
+    try {
+      region.tagCount = HtmlEncoder.toHtml(text, start, end, spanKind, spanHandler, flags, out);
+    } catch (IOException e) {
+      // StringBuilder doesn't throw
+      throw new IllegalStateException(e);
+    }
+    region.html = out.toString();
+    return region;
+  }
+
+  // TextWatcher
+
+  @Override
+  public void beforeTextChanged (CharSequence s, int start, int count, int after) {
+    shiftingSpans.clear();
+  }
+
+  @Override
+  public void onTextChanged (CharSequence s, int start, int before, int count) {
+    final int oldEnd = start + before;
+    final int delta = count - before;
+    if (regions.isEmpty()) {
+      return;
+    }
+    result = null;
+    lastEditDelta = delta;
+    if (delta != 0 && s instanceof Spanned) {
+      final Spanned spanned = (Spanned) s;
+      final int editEnd = start + count;
+      T[] spans = spanned.getSpans(editEnd, spanned.length(), spanKind);
+      if (spans != null) {
+        for (T span : spans) {
+          if (spanned.getSpanStart(span) >= editEnd) {
+            shiftingSpans.add(span);
+          }
+        }
+      }
+    }
+    // Regions touching the edit (including adjacent ones, as paragraph may be joined or split) are merged into a dirty one
+    int firstIndex = -1, lastIndex = -1;
+    for (int index = 0; index < regions.size(); index++) {
+      Region region = regions.get(index);
+      if (region.end < start) {
+        continue;
+      }
+      if (region.start > oldEnd) {
+        region.start += delta;
+        region.end += delta;
+        continue;
+      }
+      if (firstIndex == -1) {
+        firstIndex = index;
+      }
+      lastIndex = index;
+    }
+    if (firstIndex != -1) {
+      Region region = regions.get(firstIndex);
+      region.end = regions.get(lastIndex).end + delta;
+      region.html = null;
+      regions.subList(firstIndex + 1, lastIndex + 1).clear();
+    }
+  }
+
+  @Override
+  public void afterTextChanged (Editable s) { }
+
+  // SpanWatcher
+
+  @Override
+  public void onSpanAdded (Spannable text, Object what, int start, int end) {
+    if (what != this && spanKind.isInstance(what)) {
+      invalidate(start, end);
+    }
+  }
+
+  @Override
+  public void onSpanRemoved (Spannable text, Object what, int start, int end) {
+    if (what != this && spanKind.isInstance(what)) {
+      invalidate(start, end);
+    }
+  }
+
+  @Override
+  public void onSpanChanged (Spannable text, Object what, int ostart, int oend, int nstart, int nend) {
+    if (what == this || !spanKind.isInstance(what)) {
+      return;
+    }
+    // Each span is reported once per edit, any later change must not be skipped
+    if (shiftingSpans.remove(what) && nstart - ostart == lastEditDelta && nend - oend == lastEditDelta) {
+      // Span was just shifted by the last edit, regions are already shifted in onTextChanged
+      return;
+    }
+    invalidate(Math.min(ostart, nstart), Math.max(oend, nend));
+  }
+}
@@ -19,12 +19,14 @@
 
 package me.vkryl.android.html;
 
-import android.text.SpannableStringBuilder;
 import android.text.Spanned;
-import android.view.inputmethod.BaseInputConnection;
+import android.text.TextUtils;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import me.vkryl.core.StringUtils;
 
@@ -47,31 +49,280 @@ public class HtmlEncoder {
     return toHtml(charSequence, 0, charSequence.length(), spanKind, spanHandler);
   }
 
+  /**
+   * Non-ASCII characters are written as is instead of {@code &#NNNN;} entities.
+   * Output must then be stored or transferred in a Unicode encoding, such as UTF-8.
+   */
+  public static final int FLAG_RAW_UNICODE = 1;
+
+  /**
+   * Tags are kept open across span transitions while the same {@link HtmlTag} continues,
+   * so overlapping and adjacent spans produce minimal properly nested markup,
+   * e.g. {@code <b>ab<i>cd</i></b>} instead of {@code <b>ab</b><b><i>cd</i></b>}.
+   * Tags without closing part are written once per span.
+   * {@link EncodeResult#tagCount} reflects the number of actually written tags.
+   */
+  public static final int FLAG_MERGE_TAGS = 1 << 1;
+
   public static <T> EncodeResult toHtml (CharSequence charSequence, int start, int end, Class<T> spanKind, SpanHandler<T> spanHandler) {
+    return toHtml(charSequence, start, end, spanKind, spanHandler, 0);
+  }
+
+  public static <T> EncodeResult toHtml (CharSequence charSequence, int start, int end, Class<T> spanKind, SpanHandler<T> spanHandler, int flags) {
     if (!(charSequence instanceof Spanned)) {
       String text = (start != 0 || end != charSequence.length()) ?
         charSequence.subSequence(start, end).toString() :
         charSequence.toString();
       return new EncodeResult(text, 0);
     }
-    SpannableStringBuilder text = new SpannableStringBuilder(charSequence);
-    BaseInputConnection.removeComposingSpans(text);
+    StringBuilder out = new StringBuilder(estimateLength(charSequence, start, end, flags));
+    int tagCount;
+    try {
+      tagCount = encode((Spanned) charSequence, start, end, spanKind, spanHandler, flags, out);
+    } catch (IOException e) {
+      // StringBuilder doesn't throw
+      throw new IllegalStateException(e);
+    }
+    return new EncodeResult(out.toString(), tagCount);
+  }
+
+  public static <T> int toHtml (CharSequence charSequence, int start, int end, Class<T> spanKind, SpanHandler<T> spanHandler, Appendable out) throws IOException {
+    return toHtml(charSequence, start, end, spanKind, spanHandler, 0, out);
+  }
+
+  /**
+   * Writes HTML directly into {@code out}, e.g. a draft file {@link java.io.Writer} or a reused buffer,
+   * without building intermediate {@link String}. When {@code out} is {@link StringBuilder},
+   * its capacity is ensured from {@link #estimateLength(CharSequence, int, int, int)} beforehand.
+   *
+   * @return Number of written tags.
+   */
+  public static <T> int toHtml (CharSequence charSequence, int start, int end, Class<T> spanKind, SpanHandler<T> spanHandler, int flags, Appendable out) throws IOException {
+    if (!(charSequence instanceof Spanned)) {
+      out.append(charSequence, start, end);
+      return 0;
+    }
+    if (out instanceof StringBuilder) {
+      StringBuilder b = (StringBuilder) out;
+      b.ensureCapacity(b.length() + estimateLength(charSequence, start, end, flags));
+    }
+    return encode((Spanned) charSequence, start, end, spanKind, spanHandler, flags, out);
+  }
+
+  private static final int ESTIMATED_TAGS_LENGTH_PER_SPAN = 16;
+
+  public static int estimateLength (CharSequence text, int start, int end) {
+    return estimateLength(text, start, end, 0);
+  }
+
+  /**
+   * Quick pass over the text that estimates output length from the density of characters that need escaping.
+   */
+  public static int estimateLength (CharSequence text, int start, int end, int flags) {
+    final boolean rawUnicode = (flags & FLAG_RAW_UNICODE) != 0;
+    long length = 0;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c < ESCAPE_TABLE.length) {
+        length += ESCAPED_LENGTH[ESCAPE_TABLE[c]];
+      } else {
+        length += rawUnicode ? 1 : 8; // &#NNNNN;
+      }
+    }
+    if (text instanceof Spanned) {
+      length += (long) ((Spanned) text).getSpans(start, end, Object.class).length * ESTIMATED_TAGS_LENGTH_PER_SPAN;
+    }
+    return (int) Math.min(length, Integer.MAX_VALUE - 8);
+  }
+
+  private static final int EVENT_END = 0;
+  private static final int EVENT_START = 1;
+  private static final int EVENT_EMPTY = 2;
+
+  private static final HtmlTag[] NO_TAGS = new HtmlTag[0];
+
+  private static long event (int position, int type, int spanIndex) {
+    return ((long) position << 32) | ((long) type << 30) | spanIndex;
+  }
+
+  private static int eventPosition (long event) {
+    return (int) (event >>> 32);
+  }
+
+  private static int eventType (long event) {
+    return (int) (event >>> 30) & 0x3;
+  }
+
+  private static int eventSpanIndex (long event) {
+    return (int) event & 0x3FFFFFFF;
+  }
+
+  private static int addActive (int[] active, int activeCount, int spanIndex) {
+    int insertionIndex = Arrays.binarySearch(active, 0, activeCount, spanIndex);
+    if (insertionIndex >= 0) {
+      return activeCount;
+    }
+    insertionIndex = -insertionIndex - 1;
+    System.arraycopy(active, insertionIndex, active, insertionIndex + 1, activeCount - insertionIndex);
+    active[insertionIndex] = spanIndex;
+    return activeCount + 1;
+  }
+
+  private static int removeActive (int[] active, int activeCount, int spanIndex) {
+    int index = Arrays.binarySearch(active, 0, activeCount, spanIndex);
+    if (index < 0) {
+      return activeCount;
+    }
+    System.arraycopy(active, index + 1, active, index, activeCount - index - 1);
+    return activeCount - 1;
+  }
 
+  /**
+   * Spans are queried once. Their boundaries are sorted and walked as a sweep line,
+   * maintaining the set of active spans incrementally, so encoding stays near-linear
+   * regardless of how many segments text is split into.
+   * Composing spans (see BaseInputConnection.removeComposingSpans) are skipped while reading,
+   * so the whole text doesn't have to be copied just to remove them.
+   * Active spans keep the order in which {@link Spanned#getSpans} returns them. With {@link #FLAG_MERGE_TAGS}
+   * they are ordered by start, longest-running first, so tags that continue across segments form a common prefix.
+   */
+  private static <T> int encode (Spanned text, int start, int end, Class<T> spanKind, SpanHandler<T> spanHandler, int flags, Appendable out) throws IOException {
+    final T[] spans = text.getSpans(start, end, spanKind);
+    final int spanCount = spans != null ? spans.length : 0;
+    // Copied once, so runs of text are written without subSequence() copying spans of each one
+    final char[] chars = new char[end - start];
+    TextUtils.getChars(text, start, end, chars, 0);
+    if (spanCount == 0) {
+      withinStyle(out, chars, 0, end - start, flags);
+      return 0;
+    }
+
+    final boolean mergeTags = (flags & FLAG_MERGE_TAGS) != 0;
+    // Events and active set refer to spans by key, which is the position in the desired tag order
+    final int[] spanByKey = mergeTags ? sortByRange(text, spans) : null;
+    final int[] keyBySpan;
+    if (mergeTags) {
+      keyBySpan = new int[spanCount];
+      for (int key = 0; key < spanCount; key++) {
+        keyBySpan[spanByKey[key]] = key;
+      }
+    } else {
+      keyBySpan = null;
+    }
+
+    long[] events = new long[spanCount * 2];
+    int eventCount = 0;
+    for (int spanIndex = 0; spanIndex < spanCount; spanIndex++) {
+      T span = spans[spanIndex];
+      final int key = mergeTags ? keyBySpan[spanIndex] : spanIndex;
+      if (isComposing(text, span)) {
+        continue;
+      }
+      int spanStart = text.getSpanStart(span);
+      int spanEnd = text.getSpanEnd(span);
+      if (spanStart == spanEnd) {
+        events[eventCount++] = event(spanStart, EVENT_EMPTY, key);
+        continue;
+      }
+      spanStart = Math.max(start, spanStart);
+      spanEnd = Math.min(end, spanEnd);
+      if (spanStart < spanEnd) {
+        events[eventCount++] = event(spanStart, EVENT_START, key);
+        if (spanEnd < end) {
+          events[eventCount++] = event(spanEnd, EVENT_END, key);
+        }
+      }
+    }
+    // Ends go before starts at the same position
+    Arrays.sort(events, 0, eventCount);
+
+    final HtmlTag[][] spanTags = new HtmlTag[spanCount][];
+    final int[] active = new int[spanCount];
+    final int[] temporary = new int[spanCount * 2];
+    final ArrayList<HtmlTag> tagsToClose = new ArrayList<>();
+    final ArrayList<HtmlTag> openTags, desiredTags, voidTags;
+    final boolean[] spanStarted;
+    if (mergeTags) {
+      openTags = new ArrayList<>();
+      desiredTags = new ArrayList<>();
+      voidTags = new ArrayList<>();
+      spanStarted = new boolean[spanCount];
+    } else {
+      openTags = desiredTags = voidTags = null;
+      spanStarted = null;
+    }
+    int activeCount = 0;
     int tagCount = 0;
-    StringBuilder out = new StringBuilder();
+
+    int eventIndex = 0;
     int next;
     for (int i = start; i < end; i = next) {
-      next = text.nextSpanTransition(i, end, spanKind);
-      T[] spans = text.getSpans(i, next, spanKind);
-      if (spans == null || spans.length == 0) {
-        withinStyle(out, text, i, next);
-        continue;
+      int temporaryCount = 0;
+      while (eventIndex < eventCount && eventPosition(events[eventIndex]) == i) {
+        long event = events[eventIndex++];
+        int key = eventSpanIndex(event);
+        switch (eventType(event)) {
+          case EVENT_END:
+            activeCount = removeActive(active, activeCount, key);
+            break;
+          case EVENT_START:
+            activeCount = addActive(active, activeCount, key);
+            break;
+          case EVENT_EMPTY:
+            activeCount = addActive(active, activeCount, key);
+            temporary[temporaryCount++] = key;
+            break;
+        }
       }
-      List<HtmlTag> tagsToClose = new ArrayList<>();
-      for (T span : spans) {
-        HtmlTag[] tags = spanHandler.toHtmlTag(span);
-        if (tags != null) {
-          for (HtmlTag tag : tags) {
+      next = eventIndex < eventCount ? eventPosition(events[eventIndex]) : end;
+      // Empty spans touch both segments around their position, same as Spanned#getSpans reports them
+      for (int index = eventIndex; index < eventCount && eventPosition(events[index]) == next; index++) {
+        if (eventType(events[index]) == EVENT_EMPTY) {
+          int key = eventSpanIndex(events[index]);
+          activeCount = addActive(active, activeCount, key);
+          temporary[temporaryCount++] = key;
+        }
+      }
+
+      if (mergeTags) {
+        desiredTags.clear();
+        voidTags.clear();
+        for (int index = 0; index < activeCount; index++) {
+          int spanIndex = spanByKey[active[index]];
+          for (HtmlTag tag : getTags(spans, spanTags, spanIndex, spanHandler)) {
+            if (!StringUtils.isEmpty(tag.closeTag)) {
+              desiredTags.add(tag);
+            } else if (!spanStarted[spanIndex]) {
+              voidTags.add(tag);
+            }
+          }
+          spanStarted[spanIndex] = true;
+        }
+        // Keep open the longest prefix of tags that continue into this segment
+        int commonCount = 0;
+        while (commonCount < openTags.size() && commonCount < desiredTags.size() && isSameTag(openTags.get(commonCount), desiredTags.get(commonCount))) {
+          commonCount++;
+        }
+        for (int tagIndex = openTags.size() - 1; tagIndex >= commonCount; tagIndex--) {
+          out.append(openTags.remove(tagIndex).closeTag);
+        }
+        for (int tagIndex = commonCount; tagIndex < desiredTags.size(); tagIndex++) {
+          HtmlTag tag = desiredTags.get(tagIndex);
+          tagCount++;
+          out.append(tag.openTag);
+          openTags.add(tag);
+        }
+        for (HtmlTag tag : voidTags) {
+          tagCount++;
+          out.append(tag.openTag);
+        }
+        withinStyle(out, chars, i - start, next - start, flags);
+      } else if (activeCount == 0) {
+        withinStyle(out, chars, i - start, next - start, flags);
+      } else {
+        tagsToClose.clear();
+        for (int index = 0; index < activeCount; index++) {
+          for (HtmlTag tag : getTags(spans, spanTags, active[index], spanHandler)) {
             tagCount++;
             out.append(tag.openTag);
             if (!StringUtils.isEmpty(tag.closeTag)) {
@@ -79,52 +330,179 @@ public class HtmlEncoder {
             }
           }
         }
+        withinStyle(out, chars, i - start, next - start, flags);
+        for (int tagIndex = tagsToClose.size() - 1; tagIndex >= 0; tagIndex--) {
+          out.append(tagsToClose.get(tagIndex).closeTag);
+        }
       }
-      withinStyle(out, text, i, next);
-      for (int tagIndex = tagsToClose.size() - 1; tagIndex >= 0; tagIndex--) {
-        out.append(tagsToClose.get(tagIndex).closeTag);
+
+      for (int index = 0; index < temporaryCount; index++) {
+        activeCount = removeActive(active, activeCount, temporary[index]);
       }
     }
-    return new EncodeResult(out.toString(), tagCount);
+    if (mergeTags) {
+      for (int tagIndex = openTags.size() - 1; tagIndex >= 0; tagIndex--) {
+        out.append(openTags.get(tagIndex).closeTag);
+      }
+    }
+    return tagCount;
+  }
+
+  /**
+   * @return Span indices ordered by start, longer spans first, then in {@link Spanned#getSpans} order.
+   */
+  private static <T> int[] sortByRange (Spanned text, T[] spans) {
+    final int spanCount = spans.length;
+    final int[] starts = new int[spanCount];
+    final int[] ends = new int[spanCount];
+    final Integer[] order = new Integer[spanCount];
+    for (int spanIndex = 0; spanIndex < spanCount; spanIndex++) {
+      starts[spanIndex] = text.getSpanStart(spans[spanIndex]);
+      ends[spanIndex] = text.getSpanEnd(spans[spanIndex]);
+      order[spanIndex] = spanIndex;
+    }
+    // Sort is stable, so equal ranges keep getSpans order
+    Arrays.sort(order, (a, b) -> starts[a] != starts[b] ? Integer.compare(starts[a], starts[b]) : Integer.compare(ends[b], ends[a]));
+    final int[] result = new int[spanCount];
+    for (int key = 0; key < spanCount; key++) {
+      result[key] = order[key];
+    }
+    return result;
+  }
+
+  private static <T> HtmlTag[] getTags (T[] spans, HtmlTag[][] spanTags, int spanIndex, SpanHandler<T> spanHandler) {
+    HtmlTag[] tags = spanTags[spanIndex];
+    if (tags == null) {
+      tags = spanHandler.toHtmlTag(spans[spanIndex]);
+      spanTags[spanIndex] = tags = (tags != null ? tags : NO_TAGS);
+    }
+    return tags;
+  }
+
+  private static boolean isSameTag (HtmlTag a, HtmlTag b) {
+    return a == b || (a.openTag.equals(b.openTag) && a.closeTag.equals(b.closeTag));
   }
 
-  // Copy of:
+  private static boolean isComposing (Spanned text, Object span) {
+    return (text.getSpanFlags(span) & Spanned.SPAN_COMPOSING) != 0;
+  }
+
+  // Escaping, based on:
   // https://android.googlesource.com/platform/frameworks/base/+/f63f20af/core/java/android/text/Html.java#636
-  private static void withinStyle (StringBuilder out, CharSequence text,
-                                   int start, int end) {
-    for (int i = start; i < end; i++) {
-      char c = text.charAt(i);
 
-      if (c == '\n') {
-        // modified: treat all new lines as <br/> tag
-        out.append("<br/>");
-      } else if (c == '<') {
-        out.append("&lt;");
-      } else if (c == '>') {
-        out.append("&gt;");
-      } else if (c == '&') {
-        out.append("&amp;");
-      } else if (c >= 0xD800 && c <= 0xDFFF) {
-        if (c < 0xDC00 && i + 1 < end) {
-          char d = text.charAt(i + 1);
-          if (d >= 0xDC00 && d <= 0xDFFF) {
-            i++;
-            int codepoint = 0x010000 | (int) c - 0xD800 << 10 | (int) d - 0xDC00;
-            out.append("&#").append(codepoint).append(";");
-          }
+  private static final byte ESCAPE_NONE = 0;
+  private static final byte ESCAPE_SPACE = 1;
+  private static final byte ESCAPE_NEW_LINE = 2;
+  private static final byte ESCAPE_LT = 3;
+  private static final byte ESCAPE_GT = 4;
+  private static final byte ESCAPE_AMP = 5;
+  private static final byte ESCAPE_NUMERIC = 6;
+
+  private static final int[] ESCAPED_LENGTH = {1, 1, "<br/>".length(), "&lt;".length(), "&gt;".length(), "&amp;".length(), "&#NN;".length()};
+
+  private static final byte[] ESCAPE_TABLE = new byte[0x80];
+  static {
+    for (int c = 0; c < ' '; c++) {
+      ESCAPE_TABLE[c] = ESCAPE_NUMERIC;
+    }
+    ESCAPE_TABLE[0x7F] = ESCAPE_NUMERIC;
+    ESCAPE_TABLE[' '] = ESCAPE_SPACE;
+    // modified: treat all new lines as <br/> tag
+    ESCAPE_TABLE['\n'] = ESCAPE_NEW_LINE;
+    ESCAPE_TABLE['<'] = ESCAPE_LT;
+    ESCAPE_TABLE['>'] = ESCAPE_GT;
+    ESCAPE_TABLE['&'] = ESCAPE_AMP;
+  }
+
+  // Runs of characters that don't need escaping are copied with a single write call
+  private static void withinStyle (Appendable out, char[] text,
+                                   int start, int end, int flags) throws IOException {
+    final boolean rawUnicode = (flags & FLAG_RAW_UNICODE) != 0;
+    int runStart = start;
+    for (int i = start; i < end; i++) {
+      final char c = text[i];
+      final byte escape;
+      if (c < ESCAPE_TABLE.length) {
+        escape = ESCAPE_TABLE[c];
+        if (escape == ESCAPE_NONE || (escape == ESCAPE_SPACE && (i + 1 == end || text[i + 1] != ' '))) {
+          continue;
         }
-      } else if (c > 0x7E || c < ' ') {
-        out.append("&#").append((int) c).append(";");
-      } else if (c == ' ') {
-        while (i + 1 < end && text.charAt(i + 1) == ' ') {
-          out.append("&nbsp;");
+      } else if (Character.isSurrogate(c)) {
+        boolean isPair = Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text[i + 1]);
+        if (isPair && rawUnicode) {
           i++;
+          continue;
         }
-
-        out.append(' ');
+        if (runStart < i) {
+          appendRun(out, text, runStart, i);
+        }
+        if (isPair) {
+          appendNumericEntity(out, Character.toCodePoint(c, text[i + 1]));
+          i++;
+        }
+        // Unpaired surrogates are dropped
+        runStart = i + 1;
+        continue;
+      } else if (rawUnicode) {
+        continue;
       } else {
-        out.append(c);
+        escape = ESCAPE_NUMERIC;
       }
+
+      if (runStart < i) {
+        appendRun(out, text, runStart, i);
+      }
+      switch (escape) {
+        case ESCAPE_SPACE: {
+          while (i + 1 < end && text[i + 1] == ' ') {
+            out.append("&nbsp;");
+            i++;
+          }
+          out.append(' ');
+          break;
+        }
+        case ESCAPE_NEW_LINE:
+          out.append("<br/>");
+          break;
+        case ESCAPE_LT:
+          out.append("&lt;");
+          break;
+        case ESCAPE_GT:
+          out.append("&gt;");
+          break;
+        case ESCAPE_AMP:
+          out.append("&amp;");
+          break;
+        case ESCAPE_NUMERIC:
+          appendNumericEntity(out, c);
+          break;
+      }
+      runStart = i + 1;
+    }
+    if (runStart < end) {
+      appendRun(out, text, runStart, end);
+    }
+  }
+
+  private static void appendRun (Appendable out, char[] text, int start, int end) throws IOException {
+    if (out instanceof StringBuilder) {
+      ((StringBuilder) out).append(text, start, end - start);
+    } else if (out instanceof Writer) {
+      ((Writer) out).write(text, start, end - start);
+    } else {
+      out.append(CharBuffer.wrap(text, start, end - start));
+    }
+  }
+
+  private static void appendNumericEntity (Appendable out, int codePoint) throws IOException {
+    out.append("&#");
+    int divider = 1;
+    while (divider <= codePoint / 10) {
+      divider *= 10;
+    }
+    for (; divider > 0; divider /= 10) {
+      out.append((char) ('0' + (codePoint / divider) % 10));
     }
+    out.append(';');
   }
 }
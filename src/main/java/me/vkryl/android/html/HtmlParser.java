@@ -33,6 +33,8 @@ import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
 
 public class HtmlParser {
   public interface TagHandler {
@@ -43,8 +45,16 @@ public class HtmlParser {
 
   private static final String ROOT_TAG_NAME = "tg-unsupported";
 
-  @SuppressWarnings("deprecation")
   public static CharSequence fromHtml (String htmlText, @Nullable Html.ImageGetter imageGetter, @Nullable TagHandler handler) {
+    if (handler != null) {
+      // Handlers may rely on XMLReader, e.g. replace its ContentHandler
+      return fromHtmlFramework(htmlText, imageGetter, handler);
+    }
+    return new HtmlStreamParser().parse(htmlText, imageGetter);
+  }
+
+  @SuppressWarnings("deprecation")
+  static CharSequence fromHtmlFramework (String htmlText, @Nullable Html.ImageGetter imageGetter, @Nullable TagHandler handler) {
     Html.TagHandler tagHandler;
     if (handler != null) {
       tagHandler = new HtmlTagHandler(ROOT_TAG_NAME, handler);
@@ -53,19 +63,29 @@ public class HtmlParser {
     } else {
       tagHandler = null;
     }
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-      return Html.fromHtml(
-        htmlText,
-        Html.FROM_HTML_MODE_COMPACT,
-        imageGetter,
-        tagHandler
-      );
-    } else {
-      return Html.fromHtml(
-        htmlText,
-        imageGetter,
-        tagHandler
-      );
+    final OpenMarks prevMarks = openMarks.get();
+    try {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+        return Html.fromHtml(
+          htmlText,
+          Html.FROM_HTML_MODE_COMPACT,
+          imageGetter,
+          tagHandler
+        );
+      } else {
+        return Html.fromHtml(
+          htmlText,
+          imageGetter,
+          tagHandler
+        );
+      }
+    } finally {
+      // Don't keep the output after parse, even if it failed or left marks open
+      if (prevMarks != null) {
+        openMarks.set(prevMarks);
+      } else {
+        openMarks.remove();
+      }
     }
   }
 
@@ -87,6 +107,7 @@ public class HtmlParser {
         if (!tag.equalsIgnoreCase(rootTagName))
           throw new IllegalArgumentException(tag);
         ArrayDeque<Boolean> tagStatus = new ArrayDeque<>();
+        openMarks.set(new OpenMarks(output));
         wrapped = new ContentHandlerWrapper(xmlReader.getContentHandler()) {
           @Override
           public void startElement (String uri, String localName, String qName, Attributes attributes) throws SAXException {
@@ -119,8 +140,58 @@ public class HtmlParser {
     void onReplaceSpanMark (Spannable text, int start, int end, T mark);
   }
 
+  // Marks opened with start() while parsing with TagHandler, per kind.
+  // Closing properly nested tag pops the top one of its kind,
+  // so end() doesn't need to query all spans of the document.
+  private static class OpenMarks {
+    private final Editable owner;
+    private final HashMap<Class<?>, ArrayList<Object>> marks = new HashMap<>();
+
+    private OpenMarks (Editable owner) {
+      this.owner = owner;
+    }
+
+    private void push (Object mark) {
+      ArrayList<Object> stack = marks.get(mark.getClass());
+      if (stack == null) {
+        stack = new ArrayList<>();
+        marks.put(mark.getClass(), stack);
+      }
+      stack.add(mark);
+    }
+
+    @Nullable
+    private <T> T pop (Class<T> kind) {
+      ArrayList<Object> stack = marks.get(kind);
+      if (stack == null) {
+        return null;
+      }
+      for (int i = stack.size() - 1; i >= 0; i--) {
+        Object mark = stack.remove(i);
+        if (owner.getSpanStart(mark) != -1) {
+          return kind.cast(mark);
+        }
+        // Removed by someone else
+      }
+      return null;
+    }
+  }
+
+  private static final ThreadLocal<OpenMarks> openMarks = new ThreadLocal<>();
+
+  @Nullable
+  private static OpenMarks openMarks (Editable text) {
+    OpenMarks marks = openMarks.get();
+    return marks != null && marks.owner == text ? marks : null;
+  }
+
+  /**
+   * @param markKind Class of the mark passed to {@link #start(Editable, Object)}.
+   */
   public static <T> void end (Editable text, Class<T> markKind, Replacer<T> replacer) {
-    T mark = getLast(text, markKind);
+    OpenMarks marks = openMarks(text);
+    // Outside of fromHtml, marks are not tracked
+    T mark = marks != null ? marks.pop(markKind) : getLast(text, markKind);
     if (mark != null) {
       int where = text.getSpanStart(mark);
       text.removeSpan(mark);
@@ -137,6 +208,10 @@ public class HtmlParser {
   public static <T> void start (Editable text, T mark) {
     int len = text.length();
     text.setSpan(mark, len, len, Spannable.SPAN_INCLUSIVE_EXCLUSIVE);
+    OpenMarks marks = openMarks(text);
+    if (marks != null) {
+      marks.push(mark);
+    }
   }
 
   private static <T> T getLast (Spanned text, Class<T> kind) {
@@ -0,0 +1,640 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.vkryl.android.html;
+
+import android.graphics.Typeface;
+import android.text.Html;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StrikethroughSpan;
+import android.text.style.StyleSpan;
+import android.text.style.SubscriptSpan;
+import android.text.style.SuperscriptSpan;
+import android.text.style.TypefaceSpan;
+import android.text.style.URLSpan;
+import android.text.style.UnderlineSpan;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Single-pass parser for the HTML subset used with {@link HtmlParser}:
+ * inline formatting tags, links, line breaks, comments and basic entities.
+ *
+ * Text is written directly into {@link SpannableStringBuilder} in a single pass.
+ * Used by {@link HtmlParser#fromHtml} when no {@link HtmlParser.TagHandler} is set:
+ * handlers work with framework {@link org.xml.sax.XMLReader}, so they always go through framework {@link Html}.
+ *
+ * Once a construct outside of the supported subset is met (block elements, images, unknown entities,
+ * entities without trailing semicolon, doctype, misnested tags like {@code <b>x<i>y</b>z</i>},
+ * which TagSoup fixes by reopening implicitly closed elements, etc.),
+ * the whole source is passed to framework {@link Html} instead.
+ *
+ * Input may be supplied in chunks via {@link #append(CharSequence)}: chunks are scanned as they arrive,
+ * so {@link #needsFallback()} is known early, and the output is built in {@link #finish(Html.ImageGetter)}.
+ */
+public final class HtmlStreamParser {
+  private static final int KIND_IGNORED = 0;
+  private static final int KIND_UNSUPPORTED = 1;
+  private static final int KIND_LINE_BREAK = 2;
+  private static final int KIND_BOLD = 3;
+  private static final int KIND_ITALIC = 4;
+  private static final int KIND_UNDERLINE = 5;
+  private static final int KIND_STRIKETHROUGH = 6;
+  private static final int KIND_MONOSPACE = 7;
+  private static final int KIND_BIG = 8;
+  private static final int KIND_SMALL = 9;
+  private static final int KIND_SUPERSCRIPT = 10;
+  private static final int KIND_SUBSCRIPT = 11;
+  private static final int KIND_LINK = 12;
+
+  private static final int MAX_ENTITY_LENGTH = 10;
+
+  private final SpannableStringBuilder out = new SpannableStringBuilder();
+  private final StringBuilder text = new StringBuilder();
+  private final AttributesImpl attributes = new AttributesImpl();
+
+  // Open elements
+  private String[] openNames = new String[8];
+  private int[] openKinds = new int[8];
+  private int[] openStarts = new int[8];
+  private String[] openHrefs = new String[8];
+  private int openCount;
+
+  private final StringBuilder pending = new StringBuilder();
+  private StringBuilder source;
+  private boolean needsFallback, isFinished;
+
+  /**
+   * Parses next chunk of the document. Markup split between chunks is kept until the next call.
+   */
+  public void append (@NonNull CharSequence chunk) {
+    if (isFinished) {
+      throw new IllegalStateException();
+    }
+    if (source == null) {
+      source = new StringBuilder(chunk.length());
+    }
+    source.append(chunk);
+    if (needsFallback) {
+      return;
+    }
+    if (pending.length() > 0) {
+      pending.append(chunk);
+      int consumed = parse(pending, false);
+      pending.delete(0, consumed);
+    } else {
+      int consumed = parse(chunk, false);
+      if (consumed < chunk.length()) {
+        pending.append(chunk, consumed, chunk.length());
+      }
+    }
+  }
+
+  /**
+   * @return True when document contains constructs this parser doesn't support,
+   * and {@link #finish(Html.ImageGetter)} will use framework parser.
+   */
+  public boolean needsFallback () {
+    return needsFallback;
+  }
+
+  public CharSequence finish (@Nullable Html.ImageGetter imageGetter) {
+    if (isFinished) {
+      throw new IllegalStateException();
+    }
+    isFinished = true;
+    if (!needsFallback && pending.length() > 0) {
+      parse(pending, true);
+      pending.setLength(0);
+    }
+    return complete(source != null ? source.toString() : "", imageGetter);
+  }
+
+  CharSequence parse (@NonNull String html, @Nullable Html.ImageGetter imageGetter) {
+    if (isFinished || source != null) {
+      throw new IllegalStateException();
+    }
+    isFinished = true;
+    parse(html, true);
+    return complete(html, imageGetter);
+  }
+
+  private CharSequence complete (String html, @Nullable Html.ImageGetter imageGetter) {
+    if (!needsFallback) {
+      flushText();
+      while (openCount > 0) {
+        closeLast();
+      }
+    }
+    if (needsFallback) {
+      return HtmlParser.fromHtmlFramework(html, imageGetter, null);
+    }
+    return out;
+  }
+
+  // Parsing
+
+  private int parse (CharSequence input, boolean isFinal) {
+    final int length = input.length();
+    int i = 0;
+    while (i < length && !needsFallback) {
+      char c = input.charAt(i);
+      int end;
+      if (c == '<') {
+        end = parseMarkup(input, i, isFinal);
+      } else if (c == '&') {
+        end = parseEntity(input, i, isFinal);
+      } else {
+        appendText(c);
+        end = i + 1;
+      }
+      if (end == -1) {
+        // Incomplete markup, wait for the next chunk
+        break;
+      }
+      i = end;
+    }
+    return i;
+  }
+
+  private int fallback () {
+    needsFallback = true;
+    return Integer.MAX_VALUE;
+  }
+
+  private int parseMarkup (CharSequence input, int start, boolean isFinal) {
+    final int length = input.length();
+    if (start + 1 >= length) {
+      return isFinal ? fallback() : -1;
+    }
+    char next = input.charAt(start + 1);
+    if (next == '!') {
+      if (length - start < 4) {
+        return isFinal ? fallback() : -1;
+      }
+      if (input.charAt(start + 2) != '-' || input.charAt(start + 3) != '-') {
+        // <!DOCTYPE>, <![CDATA[, etc
+        return fallback();
+      }
+      int commentEnd = indexOf(input, "-->", start + 4);
+      if (commentEnd == -1) {
+        return isFinal ? fallback() : -1;
+      }
+      return commentEnd + 3;
+    }
+    final boolean isClosing = next == '/';
+    final int nameStart = start + (isClosing ? 2 : 1);
+    if (nameStart >= length) {
+      return isFinal ? fallback() : -1;
+    }
+    if (!isAsciiLetter(input.charAt(nameStart))) {
+      if (next == '?' || isClosing) {
+        return fallback();
+      }
+      // Not a tag, e.g. "a < b"
+      appendText('<');
+      return start + 1;
+    }
+    final int tagEnd = findTagEnd(input, nameStart);
+    if (tagEnd == -1) {
+      return isFinal ? fallback() : -1;
+    }
+    int nameEnd = nameStart;
+    while (nameEnd < tagEnd && isNameChar(input.charAt(nameEnd))) {
+      nameEnd++;
+    }
+    String name = input.subSequence(nameStart, nameEnd).toString().toLowerCase(Locale.ROOT);
+    if (isClosing) {
+      closeElement(name);
+      return tagEnd + 1;
+    }
+    final int kind = kindOf(name);
+    if (kind == KIND_UNSUPPORTED) {
+      return fallback();
+    }
+    int attributesEnd = tagEnd;
+    final boolean isSelfClosing = input.charAt(tagEnd - 1) == '/';
+    if (isSelfClosing) {
+      attributesEnd--;
+    }
+    String href = null;
+    if (kind == KIND_LINK) {
+      // Attributes of other supported tags don't affect output
+      parseAttributes(input, nameEnd, attributesEnd);
+      if (needsFallback) {
+        return Integer.MAX_VALUE;
+      }
+      href = attributes.getValue("href");
+    }
+    openElement(name, kind, href, isSelfClosing);
+    return tagEnd + 1;
+  }
+
+  private static int findTagEnd (CharSequence input, int start) {
+    char quote = 0;
+    for (int i = start; i < input.length(); i++) {
+      char c = input.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void parseAttributes (CharSequence input, int start, int end) {
+    attributes.clear();
+    int i = start;
+    while (i < end) {
+      char c = input.charAt(i);
+      if (Character.isWhitespace(c) || c == '/') {
+        i++;
+        continue;
+      }
+      int nameStart = i;
+      while (i < end && !Character.isWhitespace(c = input.charAt(i)) && c != '=' && c != '/') {
+        i++;
+      }
+      String name = input.subSequence(nameStart, i).toString().toLowerCase(Locale.ROOT);
+      while (i < end && Character.isWhitespace(input.charAt(i))) {
+        i++;
+      }
+      String value = name;
+      if (i < end && input.charAt(i) == '=') {
+        i++;
+        while (i < end && Character.isWhitespace(input.charAt(i))) {
+          i++;
+        }
+        int valueStart, valueEnd;
+        if (i < end && ((c = input.charAt(i)) == '"' || c == '\'')) {
+          valueStart = ++i;
+          while (i < end && input.charAt(i) != c) {
+            i++;
+          }
+          valueEnd = i;
+          i++;
+        } else {
+          valueStart = i;
+          while (i < end && !Character.isWhitespace(input.charAt(i))) {
+            i++;
+          }
+          valueEnd = i;
+        }
+        value = decodeAttributeValue(input, valueStart, Math.min(valueEnd, end));
+        if (value == null) {
+          return;
+        }
+      }
+      if (attributes.getIndex(name) == -1) {
+        attributes.addAttribute("", name, name, "CDATA", value);
+      }
+    }
+  }
+
+  @Nullable
+  private String decodeAttributeValue (CharSequence input, int start, int end) {
+    int ampersand = indexOf(input, '&', start, end);
+    if (ampersand == -1) {
+      return input.subSequence(start, end).toString();
+    }
+    StringBuilder b = new StringBuilder(end - start);
+    b.append(input, start, ampersand);
+    int i = ampersand;
+    while (i < end) {
+      char c = input.charAt(i);
+      if (c == '&') {
+        int semicolon = indexOf(input, ';', i + 1, Math.min(end, i + MAX_ENTITY_LENGTH + 2));
+        int codePoint = semicolon != -1 ? decodeEntity(input, i + 1, semicolon) : -1;
+        if (codePoint != -1) {
+          b.appendCodePoint(codePoint);
+          i = semicolon + 1;
+          continue;
+        }
+        if (i + 1 < end && isEntityStart(input.charAt(i + 1))) {
+          fallback();
+          return null;
+        }
+      }
+      b.append(c);
+      i++;
+    }
+    return b.toString();
+  }
+
+  private int parseEntity (CharSequence input, int start, boolean isFinal) {
+    final int length = input.length();
+    final int limit = Math.min(length, start + MAX_ENTITY_LENGTH + 2);
+    for (int i = start + 1; i < limit; i++) {
+      char c = input.charAt(i);
+      if (c == ';') {
+        int codePoint = decodeEntity(input, start + 1, i);
+        if (codePoint == -1) {
+          return fallback();
+        }
+        if (Character.isBmpCodePoint(codePoint)) {
+          appendText((char) codePoint);
+        } else {
+          text.appendCodePoint(codePoint);
+        }
+        return i + 1;
+      }
+      if (!(isAsciiLetter(c) || (c >= '0' && c <= '9') || (c == '#' && i == start + 1))) {
+        break;
+      }
+      if (i == length - 1 && !isFinal) {
+        return -1;
+      }
+    }
+    if (start + 1 == length && !isFinal) {
+      return -1;
+    }
+    if (start + 1 < length && isEntityStart(input.charAt(start + 1))) {
+      // TagSoup resolves known entities without trailing semicolon, e.g. "&amp" or "&#39"
+      return fallback();
+    }
+    // Bare ampersand, e.g. "a & b"
+    appendText('&');
+    return start + 1;
+  }
+
+  private static int decodeEntity (CharSequence input, int start, int end) {
+    if (start >= end) {
+      return -1;
+    }
+    if (input.charAt(start) == '#') {
+      int radix = 10;
+      int i = start + 1;
+      if (i < end && (input.charAt(i) == 'x' || input.charAt(i) == 'X')) {
+        radix = 16;
+        i++;
+      }
+      if (i == end) {
+        return -1;
+      }
+      int codePoint = 0;
+      for (; i < end; i++) {
+        int digit = Character.digit(input.charAt(i), radix);
+        if (digit == -1) {
+          return -1;
+        }
+        codePoint = codePoint * radix + digit;
+        if (codePoint > Character.MAX_CODE_POINT) {
+          return -1;
+        }
+      }
+      return codePoint != 0 ? codePoint : -1;
+    }
+    switch (end - start) {
+      case 2:
+        if (regionMatches(input, start, "lt")) return '<';
+        if (regionMatches(input, start, "gt")) return '>';
+        break;
+      case 3:
+        if (regionMatches(input, start, "amp")) return '&';
+        break;
+      case 4:
+        if (regionMatches(input, start, "quot")) return '"';
+        if (regionMatches(input, start, "apos")) return '\'';
+        if (regionMatches(input, start, "nbsp")) return '\u00a0';
+        break;
+    }
+    return -1;
+  }
+
+  // Text
+
+  private void appendText (char c) {
+    if (c == ' ' || c == '\n') {
+      // Collapse whitespace the same way framework does
+      char prev;
+      int len = text.length();
+      if (len > 0) {
+        prev = text.charAt(len - 1);
+      } else {
+        len = out.length();
+        prev = len > 0 ? out.charAt(len - 1) : '\n';
+      }
+      if (prev != ' ' && prev != '\n') {
+        text.append(' ');
+      }
+    } else {
+      text.append(c);
+    }
+  }
+
+  private void flushText () {
+    if (text.length() > 0) {
+      out.append(text);
+      text.setLength(0);
+    }
+  }
+
+  // Elements
+
+  private static int kindOf (String name) {
+    switch (name) {
+      case "br":
+        return KIND_LINE_BREAK;
+      case "b": case "strong":
+        return KIND_BOLD;
+      case "i": case "em": case "cite": case "dfn":
+        return KIND_ITALIC;
+      case "u":
+        return KIND_UNDERLINE;
+      case "s": case "strike": case "del":
+        return KIND_STRIKETHROUGH;
+      case "tt":
+        return KIND_MONOSPACE;
+      case "big":
+        return KIND_BIG;
+      case "small":
+        return KIND_SMALL;
+      case "sup":
+        return KIND_SUPERSCRIPT;
+      case "sub":
+        return KIND_SUBSCRIPT;
+      case "a":
+        return KIND_LINK;
+      // Not special-cased by every framework version
+      case "ins":
+      // Elements affecting paragraphs or document structure
+      case "p": case "div": case "span": case "font": case "blockquote":
+      case "ul": case "ol": case "li": case "img": case "hr": case "pre":
+      case "h1": case "h2": case "h3": case "h4": case "h5": case "h6":
+      case "html": case "head": case "body": case "title": case "meta": case "style": case "script":
+      case "table": case "thead": case "tbody": case "tr": case "th": case "td":
+      case "form": case "input": case "select": case "option": case "textarea":
+        return KIND_UNSUPPORTED;
+    }
+    return KIND_IGNORED;
+  }
+
+  private static boolean isVoidElement (String name) {
+    switch (name) {
+      case "area": case "base": case "br": case "col": case "embed": case "hr": case "img":
+      case "input": case "link": case "meta": case "param": case "source": case "track": case "wbr":
+        return true;
+    }
+    return false;
+  }
+
+  private void openElement (String name, int kind, @Nullable String href, boolean isSelfClosing) {
+    flushText();
+    if (kind == KIND_LINE_BREAK) {
+      out.append('\n');
+    }
+    if (isSelfClosing || isVoidElement(name)) {
+      endElement(kind, out.length(), href);
+    } else {
+      if (openCount == openNames.length) {
+        int newSize = openCount * 2;
+        openNames = Arrays.copyOf(openNames, newSize);
+        openKinds = Arrays.copyOf(openKinds, newSize);
+        openStarts = Arrays.copyOf(openStarts, newSize);
+        openHrefs = Arrays.copyOf(openHrefs, newSize);
+      }
+      openNames[openCount] = name;
+      openKinds[openCount] = kind;
+      openStarts[openCount] = out.length();
+      openHrefs[openCount] = href;
+      openCount++;
+    }
+  }
+
+  private void closeElement (String name) {
+    for (int i = openCount - 1; i >= 0; i--) {
+      if (openNames[i].equals(name)) {
+        if (i != openCount - 1) {
+          // Misnested tags, e.g. <b>x<i>y</b>z</i>: TagSoup reopens implicitly closed elements after the closing tag
+          fallback();
+          return;
+        }
+        flushText();
+        closeLast();
+        return;
+      }
+    }
+    // Closing tag without opening one is ignored
+  }
+
+  private void closeLast () {
+    int index = --openCount;
+    String href = openHrefs[index];
+    openNames[index] = null;
+    openHrefs[index] = null;
+    endElement(openKinds[index], openStarts[index], href);
+  }
+
+  private void endElement (int kind, int start, @Nullable String href) {
+    final int end = out.length();
+    if (start != end) {
+      Object span = null;
+      switch (kind) {
+        case KIND_BOLD:
+          span = new StyleSpan(Typeface.BOLD);
+          break;
+        case KIND_ITALIC:
+          span = new StyleSpan(Typeface.ITALIC);
+          break;
+        case KIND_UNDERLINE:
+          span = new UnderlineSpan();
+          break;
+        case KIND_STRIKETHROUGH:
+          span = new StrikethroughSpan();
+          break;
+        case KIND_MONOSPACE:
+          span = new TypefaceSpan("monospace");
+          break;
+        case KIND_BIG:
+          span = new RelativeSizeSpan(1.25f);
+          break;
+        case KIND_SMALL:
+          span = new RelativeSizeSpan(0.8f);
+          break;
+        case KIND_SUPERSCRIPT:
+          span = new SuperscriptSpan();
+          break;
+        case KIND_SUBSCRIPT:
+          span = new SubscriptSpan();
+          break;
+        case KIND_LINK:
+          if (href != null) {
+            span = new URLSpan(href);
+          }
+          break;
+      }
+      if (span != null) {
+        out.setSpan(span, start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+      }
+    }
+  }
+
+  // Utils
+
+  private static boolean isAsciiLetter (char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isEntityStart (char c) {
+    return isAsciiLetter(c) || c == '#';
+  }
+
+  private static boolean isNameChar (char c) {
+    return isAsciiLetter(c) || (c >= '0' && c <= '9') || c == '-' || c == '_' || c == ':' || c == '.';
+  }
+
+  private static boolean regionMatches (CharSequence input, int start, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (input.charAt(start + i) != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int indexOf (CharSequence input, char c, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (input.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int indexOf (CharSequence input, String value, int start) {
+    final int last = input.length() - value.length();
+    for (int i = start; i <= last; i++) {
+      if (regionMatches(input, i, value)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is a part of X-Android
+ * Copyright © Vyacheslav Krylov 2024
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@file:Suppress("MemberVisibilityCanBePrivate")
+
+package me.vkryl.android.animatorx
+
+import android.animation.Animator
+import android.animation.AnimatorListenerAdapter
+import android.animation.TimeInterpolator
+import android.animation.ValueAnimator
+import android.os.Build
+import me.vkryl.android.AnimatorUtils
+import me.vkryl.android.animator.AnimationGovernor
+
+/**
+ * Value-agnostic part of animators in this package: owns [ValueAnimator] lifecycle
+ * and reports raw animation fraction, so subclasses can store values in primitive fields.
+ *
+ * Single [ValueAnimator] and single set of listeners are reused for all animations during animator lifetime.
+ */
+abstract class AnimatorEngine internal constructor(
+  val duration: Long,
+  val interpolator: TimeInterpolator
+) {
+  var isAnimating: Boolean = false
+    private set
+
+  /**
+   * Differs from [isAnimating] while animation gets restarted,
+   * so [AnimationGovernor] sees only real transitions between idle and animating states.
+   */
+  private var isCountedByGovernor: Boolean = false
+    set(isCounted) {
+      if (field != isCounted) {
+        field = isCounted
+        if (isCounted) {
+          AnimationGovernor.instance().onAnimationStarted()
+        } else {
+          AnimationGovernor.instance().onAnimationFinished()
+        }
+      }
+    }
+  private var animator: ValueAnimator? = null
+
+  /**
+   * When enabled, changing target while animation is running retargets the running animator
+   * with duration proportional to the remaining distance instead of the full [duration],
+   * so quickly flipped values settle quickly.
+   */
+  var retargetByDistance: Boolean = false
+
+  /**
+   * Purely decorative animations can be dropped by [AnimationGovernor] under pressure.
+   */
+  var isDecorative: Boolean = false
+
+  /**
+   * Interpolated fraction of the last animation frame.
+   */
+  internal var lastFraction: Float = 0f
+    private set
+
+  /**
+   * Interpolated value at the point of the curve the running animation was started from,
+   * so retargeted animation keeps the velocity of the interrupted one, see [startAnimation].
+   */
+  private var startInterpolation: Float = 0f
+  private var animationDistance: Float = 0f
+  private var pendingDistance: Float = 0f
+  private var pendingContinues: Boolean = false
+
+  private val animatorCallbacks = object : AnimatorListenerAdapter(), ValueAnimator.AnimatorUpdateListener {
+    override fun onAnimationUpdate(animation: ValueAnimator) {
+      // Updates of the cancelled animation are ignored
+      if (isAnimating) {
+        lastFraction = (animation.animatedFraction - startInterpolation) / (1f - startInterpolation)
+        onAnimationFraction(lastFraction)
+      }
+    }
+
+    override fun onAnimationEnd(animation: Animator) {
+      // Cancelling animation via stopAnimation() also triggers onAnimationEnd, which has to be ignored
+      if (cancelAnimation(isIdle = false)) {
+        isDispatchingEnd = true
+        try {
+          this@AnimatorEngine.onAnimationEnd()
+        } finally {
+          isDispatchingEnd = false
+          // Finish listener may chain the next animation, which is not reported to the governor as a new one
+          if (!isAnimating) {
+            isCountedByGovernor = false
+          }
+        }
+      }
+    }
+  }
+
+  private var isDispatchingEnd = false
+
+  fun stopAnimation(): Boolean = cancelAnimation(isIdle = true)
+
+  private fun cancelAnimation(isIdle: Boolean): Boolean {
+    if (isAnimating) {
+      isAnimating = false
+      if (isIdle) {
+        isCountedByGovernor = false
+      }
+      animator?.cancel()
+      return true
+    }
+    return false
+  }
+
+  internal val animatorsEnabled: Boolean
+    get() = (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || ValueAnimator.areAnimatorsEnabled()) &&
+      AnimationGovernor.instance().adjustDuration(duration, isDecorative, null) > 0
+
+  internal abstract fun onAnimationFraction(fraction: Float)
+  internal abstract fun onAnimationEnd()
+
+  /**
+   * Called right before animation towards the new target starts: subclass captures current value as a start value.
+   */
+  internal abstract fun onPrepareAnimation()
+
+  /**
+   * Called when new target has to be applied immediately: subclass assigns it and reports finish.
+   */
+  internal abstract fun onApplyTarget()
+
+  private var referenceDistance = 0.0f
+
+  /**
+   * @param distance Distance between current value and the new target.
+   * @param continues True when the new target lies in the direction of the running animation,
+   * so its velocity is kept instead of starting the curve over.
+   * @return Part of the full [duration] to use when [retargetByDistance] is enabled,
+   * relative to the distance of the last animation started from rest.
+   */
+  internal fun distanceFactor(distance: Float, animated: Boolean, continues: Boolean = false): Float {
+    pendingDistance = distance
+    pendingContinues = continues
+    return if (animated && retargetByDistance && isAnimating && referenceDistance > 0.0f) {
+      distance / referenceDistance
+    } else {
+      referenceDistance = distance
+      1.0f
+    }
+  }
+
+  /**
+   * Shared part of `changeValue`: subclasses store the new target in their own field and call this.
+   * Target is applied immediately via [onApplyTarget] when [animated] is false or animations are disabled.
+   */
+  internal fun changeTarget(animated: Boolean, distanceFactor: Float) {
+    val velocity = if (animated && retargetByDistance && pendingContinues) currentVelocity() else 0.0f
+    pendingContinues = false
+    cancelAnimation(isIdle = false)
+    if (animated && animatorsEnabled) {
+      onPrepareAnimation()
+      startAnimation(distanceFactor, velocity)
+    } else {
+      isCountedByGovernor = false
+      onApplyTarget()
+    }
+  }
+
+  /**
+   * @return Velocity of the running animation, in distance units per millisecond.
+   */
+  private fun currentVelocity(): Float {
+    val animator = this.animator
+    if (!isAnimating || animator == null || animator.duration <= 0) {
+      return 0.0f
+    }
+    val playFraction = (animator.currentPlayTime.toFloat() / animator.duration).coerceIn(0.0f, 1.0f)
+    val slope = AnimatorUtils.getSlope(interpolator, playFraction) / (1.0f - startInterpolation)
+    return animationDistance * slope / animator.duration
+  }
+
+  /**
+   * @param distanceFactor Part of the full [duration] to use, see [retargetByDistance].
+   * @param velocity Velocity of the interrupted animation to keep, see [currentVelocity].
+   */
+  internal fun startAnimation(distanceFactor: Float = 1.0f, velocity: Float = 0.0f) {
+    cancelAnimation(isIdle = false)
+    if (isDispatchingEnd && Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+      // Before API 24 ValueAnimator resets its running state after notifying end listeners,
+      // so animator restarted from onAnimationEnd would never report its own end
+      this.animator = null
+    }
+    val animator = this.animator ?: ValueAnimator.ofFloat(0f, 1f).also {
+      it.interpolator = interpolator
+      it.addUpdateListener(animatorCallbacks)
+      it.addListener(animatorCallbacks)
+      this.animator = it
+    }
+    val adjustedDuration = AnimationGovernor.instance().adjustDuration(duration, isDecorative, null)
+    val remainingDuration = if (distanceFactor < 1.0f) {
+      maxOf(1L, (adjustedDuration * distanceFactor).toLong())
+    } else {
+      adjustedDuration
+    }
+    // Start from the point of the curve with the same velocity, so it doesn't jump
+    val startFraction = if (velocity > 0.0f && pendingDistance > 0.0f) {
+      AnimatorUtils.findStartFraction(interpolator, velocity * remainingDuration / pendingDistance)
+    } else {
+      0.0f
+    }
+    startInterpolation = AnimatorUtils.getInterpolation(interpolator, startFraction)
+    animationDistance = pendingDistance
+    animator.duration = (remainingDuration / (1.0f - startFraction)).toLong()
+    lastFraction = 0f
+    isAnimating = true
+    isCountedByGovernor = true
+    if (startFraction > 0.0f) {
+      animator.currentPlayTime = (animator.duration * startFraction).toLong()
+    }
+    animator.start()
+  }
+}
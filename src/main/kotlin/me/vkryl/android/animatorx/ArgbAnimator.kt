@@ -15,33 +15,148 @@
  * limitations under the License.
  */
 
+@file:Suppress("MemberVisibilityCanBePrivate")
+
 package me.vkryl.android.animatorx
 
 import android.animation.TimeInterpolator
 import android.graphics.Color
 import androidx.annotation.ColorInt
 import me.vkryl.core.fromToArgb
+import kotlin.math.abs
+import kotlin.math.max
+
+/**
+ * [AnimatorListener] specialized for primitive [Int] values.
+ */
+interface ArgbAnimatorListener {
+  fun onAnimationUpdate(newValue: Int)
+  fun onAnimationFinish(finalValue: Int, byAnimationEnd: Boolean) { }
+}
 
-class ArgbAnimator : BaseAnimator<Int> {
+/**
+ * Animates an ARGB color.
+ *
+ * Values are kept in primitive fields instead of [BaseAnimator] storage, so running animation does not allocate per frame,
+ * as long as [ArgbAnimatorListener] is used. [value] is declared by [BaseAnimator] and returns boxed [Int].
+ */
+class ArgbAnimator @JvmOverloads constructor(
+  duration: Long,
+  interpolator: TimeInterpolator,
+  @ColorInt initialValue: Int = DEFAULT_INITIAL_VALUE,
+  private val listener: ArgbAnimatorListener
+) : BaseAnimator<Int>(duration, interpolator) {
   companion object {
     const val DEFAULT_INITIAL_VALUE = Color.BLACK
   }
 
+  /**
+   * Lambdas receive boxed [Int] on every frame, use [ArgbAnimatorListener] in performance-sensitive code.
+   */
   constructor(
     duration: Long,
     interpolator: TimeInterpolator,
     @ColorInt initialValue: Int = DEFAULT_INITIAL_VALUE,
     onAnimationsFinished: AnimatorFinishListener<Int>? = null,
     onApplyValue: AnimatorUpdateListener<Int>
-  ) : super(duration, interpolator, initialValue, onAnimationsFinished, onApplyValue)
+  ) : this(duration, interpolator, initialValue, object : ArgbAnimatorListener {
+    override fun onAnimationUpdate(newValue: Int) {
+      onApplyValue(newValue)
+    }
+
+    override fun onAnimationFinish(finalValue: Int, byAnimationEnd: Boolean) {
+      onAnimationsFinished?.invoke(finalValue, byAnimationEnd)
+    }
+  })
 
+  /**
+   * Generic [AnimatorListener] receives boxed [Int] on every frame, use [ArgbAnimatorListener] in performance-sensitive code.
+   */
   @JvmOverloads constructor(
     duration: Long,
     interpolator: TimeInterpolator,
     @ColorInt initialValue: Int = DEFAULT_INITIAL_VALUE,
     listener: AnimatorListener<Int>
-  ) : super(duration, interpolator, initialValue, listener)
+  ) : this(duration, interpolator, initialValue, object : ArgbAnimatorListener {
+    override fun onAnimationUpdate(newValue: Int) {
+      listener.onAnimationUpdate(newValue)
+    }
+
+    override fun onAnimationFinish(finalValue: Int, byAnimationEnd: Boolean) {
+      listener.onAnimationFinish(finalValue, byAnimationEnd)
+    }
+  })
+
+  private var current: Int = initialValue
+  private var animatingFromValue: Int = initialValue
+  private var animatingToValue: Int = initialValue
+
+  /**
+   * Unboxed [value].
+   */
+  @get:ColorInt
+  internal val intValue: Int
+    get() = current
+
+  override val value: Int
+    get() = current
 
   override fun interpolate(fromValue: Int, toValue: Int, fraction: Float): Int =
     fromToArgb(fromValue, toValue, fraction)
+
+  override fun handleValueChangeFinished(finalValue: Int, byAnimationEnd: Boolean) {
+    super.handleValueChangeFinished(finalValue, byAnimationEnd)
+    listener.onAnimationFinish(finalValue, byAnimationEnd)
+  }
+
+  // Largest channel difference
+  private fun distance(fromValue: Int, toValue: Int): Float {
+    var distance = 0
+    for (shift in 0..24 step 8) {
+      distance = max(distance, abs(((fromValue ushr shift) and 0xff) - ((toValue ushr shift) and 0xff)))
+    }
+    return distance.toFloat()
+  }
+
+  // Storage
+
+  private fun setCurrent(newValue: Int) {
+    if (current != newValue) {
+      current = newValue
+      listener.onAnimationUpdate(newValue)
+    }
+  }
+
+  override val targetValue: Int
+    get() = animatingToValue
+
+  override fun isTarget(newValue: Int): Boolean =
+    animatingToValue == newValue
+
+  override fun setTarget(newValue: Int) {
+    animatingToValue = newValue
+  }
+
+  override fun applyTargetValue() {
+    setCurrent(animatingToValue)
+  }
+
+  override fun retargetFactor(newValue: Int, animated: Boolean): Float {
+    // New target continues the running animation when channels keep moving the same way overall
+    var direction = 0
+    for (shift in 0..24 step 8) {
+      val running = ((animatingToValue ushr shift) and 0xff) - ((animatingFromValue ushr shift) and 0xff)
+      val remaining = ((newValue ushr shift) and 0xff) - ((current ushr shift) and 0xff)
+      direction += running * remaining
+    }
+    return distanceFactor(distance(current, newValue), animated, direction > 0)
+  }
+
+  override fun onAnimationFraction(fraction: Float) {
+    setCurrent(fromToArgb(animatingFromValue, animatingToValue, fraction))
+  }
+
+  override fun onPrepareAnimation() {
+    animatingFromValue = current
+  }
 }
\ No newline at end of file
@@ -19,10 +19,7 @@
 
 package me.vkryl.android.animatorx
 
-import android.animation.Animator
 import android.animation.TimeInterpolator
-import android.animation.ValueAnimator
-import android.os.Build
 import androidx.annotation.CallSuper
 
 internal typealias AnimatorUpdateListener<T> = (newValue: T) -> Unit
@@ -33,12 +30,36 @@ interface AnimatorListener<T> {
   fun onAnimationFinish(finalValue: T, byAnimationEnd: Boolean) { }
 }
 
-abstract class BaseAnimator<T>(
-  val duration: Long,
-  val interpolator: TimeInterpolator,
-  initialValue: T,
-  private val onAnimationsFinished: AnimatorFinishListener<T>? = null,
-  private val onValueChange: AnimatorUpdateListener<T>) {
+/**
+ * Animates a value of type [T].
+ *
+ * Values are stored as [T], so primitive types get boxed on every frame. [FloatAnimator] and [ArgbAnimator]
+ * override storage hooks below and keep values in primitive fields, while sharing the rest of the state machine.
+ */
+abstract class BaseAnimator<T> internal constructor(
+  duration: Long,
+  interpolator: TimeInterpolator
+) : AnimatorEngine(duration, interpolator) {
+  private var onAnimationsFinished: AnimatorFinishListener<T>? = null
+  private var onValueChange: AnimatorUpdateListener<T>? = null
+
+  private var storedValue: Any? = null
+  private var animatingFromValue: Any? = null
+  private var animatingToValue: Any? = null
+
+  constructor(
+    duration: Long,
+    interpolator: TimeInterpolator,
+    initialValue: T,
+    onAnimationsFinished: AnimatorFinishListener<T>? = null,
+    onValueChange: AnimatorUpdateListener<T>
+  ) : this(duration, interpolator) {
+    this.onAnimationsFinished = onAnimationsFinished
+    this.onValueChange = onValueChange
+    this.storedValue = initialValue
+    this.animatingFromValue = initialValue
+    this.animatingToValue = initialValue
+  }
 
   constructor(
     duration: Long,
@@ -55,16 +76,12 @@ abstract class BaseAnimator<T>(
       }
     )
 
-  var value: T = initialValue
-    private set(value) {
-      if (field != value) {
-        field = value
-        handleValueChange(value)
-      }
-    }
+  @Suppress("UNCHECKED_CAST")
+  open val value: T
+    get() = storedValue as T
   val finalValue: T
     get() = if (isAnimating) {
-      animatingToValue
+      targetValue
     } else {
       value
     }
@@ -75,24 +92,11 @@ abstract class BaseAnimator<T>(
     get() = value
     set(newValue) = changeValue(newValue, true)
 
-  val isAnimating: Boolean
-    get() = animator != null
-  private var animator: ValueAnimator? = null
-  private var animatingToValue: T = initialValue
-
-  fun stopAnimation(): Boolean {
-    return animator?.let {
-      it.cancel()
-      animator = null
-      true
-    } ?: false
-  }
-
   abstract fun interpolate(fromValue: T, toValue: T, fraction: Float): T
 
   @CallSuper
   open fun handleValueChange(newValue: T) {
-    onValueChange(newValue)
+    onValueChange?.invoke(newValue)
   }
 
   @CallSuper
@@ -100,46 +104,72 @@ abstract class BaseAnimator<T>(
     onAnimationsFinished?.invoke(finalValue, byAnimationEnd)
   }
 
+  // Storage
+
+  @Suppress("UNCHECKED_CAST")
+  internal open val targetValue: T
+    get() = animatingToValue as T
+
+  internal open fun isTarget(newValue: T): Boolean =
+    animatingToValue == newValue
+
+  internal open fun setTarget(newValue: T) {
+    animatingToValue = newValue
+  }
+
+  /**
+   * Assigns target as the current value, reporting the change.
+   */
+  @Suppress("UNCHECKED_CAST")
+  internal open fun applyTargetValue() {
+    setStoredValue(animatingToValue as T)
+  }
+
+  /**
+   * @return Part of the full duration for animation towards [newValue], see [distanceFactor].
+   */
+  internal open fun retargetFactor(newValue: T, animated: Boolean): Float {
+    // Without knowing value type, only reversal of the running animation can be shortened
+    return if (animated && retargetByDistance && isAnimating && animatingFromValue == newValue) {
+      lastFraction
+    } else {
+      1.0f
+    }
+  }
+
+  private fun setStoredValue(newValue: T) {
+    if (storedValue != newValue) {
+      storedValue = newValue
+      handleValueChange(newValue)
+    }
+  }
+
+  @Suppress("UNCHECKED_CAST")
+  override fun onAnimationFraction(fraction: Float) {
+    setStoredValue(interpolate(animatingFromValue as T, animatingToValue as T, fraction))
+  }
+
+  override fun onPrepareAnimation() {
+    animatingFromValue = storedValue
+  }
+
+  // Shared state machine
+
+  override fun onAnimationEnd() {
+    handleValueChangeFinished(value, true)
+  }
+
+  override fun onApplyTarget() {
+    applyTargetValue()
+    handleValueChangeFinished(value, false)
+  }
+
   @JvmOverloads
   fun changeValue(newValue: T, animated: Boolean = true) {
-    if (animated && isAnimating && animatingToValue == newValue)
+    if (animated && isAnimating && isTarget(newValue))
       return
-    stopAnimation()
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-      if (!ValueAnimator.areAnimatorsEnabled()) {
-        value = newValue
-        onAnimationsFinished?.invoke(animatedValue, false)
-        return
-      }
-    }
-    if (animated) {
-      animatingToValue = newValue
-      val animator = ValueAnimator.ofFloat(0f, 1f)
-      animator.duration = duration
-      animator.interpolator = interpolator
-      val fromValue = this.value
-      animator.addUpdateListener {
-        if (this.animator == it) {
-          val fraction = it.animatedFraction
-          value = interpolate(fromValue, newValue, fraction)
-        }
-      }
-      animator.addListener(object : Animator.AnimatorListener {
-        override fun onAnimationStart(animation: Animator) { }
-        override fun onAnimationRepeat(animation: Animator) { }
-        override fun onAnimationCancel(animation: Animator) { }
-
-        override fun onAnimationEnd(animator: Animator) {
-          if (this@BaseAnimator.animator == animator && stopAnimation()) {
-            handleValueChangeFinished(animatedValue, true)
-          }
-        }
-      })
-      this.animator = animator
-      animator.start()
-    } else {
-      value = newValue
-      handleValueChangeFinished(animatedValue, false)
-    }
+    val distanceFactor = retargetFactor(newValue, animated)
+    setTarget(newValue)
+    changeTarget(animated, distanceFactor)
   }
 }
\ No newline at end of file
@@ -71,15 +71,18 @@ class BoolAnimator(
   private val animated = FloatAnimator(
     duration, interpolator,
     initialValue = if (initialValue) 1.0f else 0.0f,
-    onAnimationsFinished = { floatValue, byAnimationEnd ->
-      val state = State.valueOf(floatValue)
-      onAnimationsFinished?.invoke(state, byAnimationEnd)
-    },
-    onApplyValue = { floatValue ->
-      val state = State.valueOf(floatValue)
-      val oldState = this.state
-      this.state = state
-      onApplyValue(state, floatValue, oldState != state, oldState)
+    listener = object : FloatAnimatorListener {
+      override fun onAnimationUpdate(newValue: Float) {
+        val state = State.valueOf(newValue)
+        val oldState = this@BoolAnimator.state
+        this@BoolAnimator.state = state
+        onApplyValue(state, newValue, oldState != state, oldState)
+      }
+
+      override fun onAnimationFinish(finalValue: Float, byAnimationEnd: Boolean) {
+        val state = State.valueOf(finalValue)
+        onAnimationsFinished?.invoke(state, byAnimationEnd)
+      }
     }
   )
 
@@ -96,12 +99,17 @@ class BoolAnimator(
     set(newValue) = changeValue(newValue, true)
 
   val floatValue: Float
-    get() = animated.value
+    get() = animated.floatValue
+
+  var retargetByDistance: Boolean
+    get() = animated.retargetByDistance
+    set(value) {
+      animated.retargetByDistance = value
+    }
 
   @JvmOverloads
   fun changeValue(newValue: Boolean, animated: Boolean = true) {
     if (this.value != newValue || !animated) {
-      this.animated.stopAnimation()
       value = newValue
       val newFloatValue = if (newValue) 1.0f else 0.0f
       this.animated.changeValue(newFloatValue, animated)
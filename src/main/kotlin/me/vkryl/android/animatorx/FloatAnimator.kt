@@ -15,30 +15,131 @@
  * limitations under the License.
  */
 
+@file:Suppress("MemberVisibilityCanBePrivate")
+
 package me.vkryl.android.animatorx
 
 import android.animation.TimeInterpolator
+import kotlin.math.abs
+
+/**
+ * [AnimatorListener] specialized for primitive [Float] values.
+ */
+interface FloatAnimatorListener {
+  fun onAnimationUpdate(newValue: Float)
+  fun onAnimationFinish(finalValue: Float, byAnimationEnd: Boolean) { }
+}
 
-class FloatAnimator : BaseAnimator<Float> {
+/**
+ * Animates a [Float] value.
+ *
+ * Values are kept in primitive fields instead of [BaseAnimator] storage, so running animation does not allocate per frame,
+ * as long as [FloatAnimatorListener] is used. [value] is declared by [BaseAnimator] and returns boxed [Float].
+ */
+class FloatAnimator @JvmOverloads constructor(
+  duration: Long,
+  interpolator: TimeInterpolator,
+  initialValue: Float = DEFAULT_INITIAL_VALUE,
+  private val listener: FloatAnimatorListener
+) : BaseAnimator<Float>(duration, interpolator) {
   companion object {
     const val DEFAULT_INITIAL_VALUE = 0.0f
   }
 
+  /**
+   * Lambdas receive boxed [Float] on every frame, use [FloatAnimatorListener] in performance-sensitive code.
+   */
   constructor(
     duration: Long,
     interpolator: TimeInterpolator,
     initialValue: Float = DEFAULT_INITIAL_VALUE,
     onAnimationsFinished: AnimatorFinishListener<Float>? = null,
     onApplyValue: AnimatorUpdateListener<Float>
-  ) : super(duration, interpolator, initialValue, onAnimationsFinished, onApplyValue)
+  ) : this(duration, interpolator, initialValue, object : FloatAnimatorListener {
+    override fun onAnimationUpdate(newValue: Float) {
+      onApplyValue(newValue)
+    }
+
+    override fun onAnimationFinish(finalValue: Float, byAnimationEnd: Boolean) {
+      onAnimationsFinished?.invoke(finalValue, byAnimationEnd)
+    }
+  })
 
+  /**
+   * Generic [AnimatorListener] receives boxed [Float] on every frame, use [FloatAnimatorListener] in performance-sensitive code.
+   */
   @JvmOverloads constructor(
     duration: Long,
     interpolator: TimeInterpolator,
     initialValue: Float = DEFAULT_INITIAL_VALUE,
     listener: AnimatorListener<Float>
-  ) : super(duration, interpolator, initialValue, listener)
+  ) : this(duration, interpolator, initialValue, object : FloatAnimatorListener {
+    override fun onAnimationUpdate(newValue: Float) {
+      listener.onAnimationUpdate(newValue)
+    }
+
+    override fun onAnimationFinish(finalValue: Float, byAnimationEnd: Boolean) {
+      listener.onAnimationFinish(finalValue, byAnimationEnd)
+    }
+  })
 
-  override fun interpolate(fromValue: Float, toValue: Float, fraction: Float) =
+  private var current: Float = initialValue
+  private var animatingFromValue: Float = initialValue
+  private var animatingToValue: Float = initialValue
+
+  /**
+   * Unboxed [value].
+   */
+  internal val floatValue: Float
+    get() = current
+
+  override val value: Float
+    get() = current
+
+  override fun interpolate(fromValue: Float, toValue: Float, fraction: Float): Float =
     fromValue + (toValue - fromValue) * fraction
+
+  override fun handleValueChangeFinished(finalValue: Float, byAnimationEnd: Boolean) {
+    super.handleValueChangeFinished(finalValue, byAnimationEnd)
+    listener.onAnimationFinish(finalValue, byAnimationEnd)
+  }
+
+  private fun distance(fromValue: Float, toValue: Float): Float =
+    abs(toValue - fromValue)
+
+  // Storage
+
+  private fun setCurrent(newValue: Float) {
+    if (current != newValue) {
+      current = newValue
+      listener.onAnimationUpdate(newValue)
+    }
+  }
+
+  override val targetValue: Float
+    get() = animatingToValue
+
+  override fun isTarget(newValue: Float): Boolean =
+    animatingToValue == newValue
+
+  override fun setTarget(newValue: Float) {
+    animatingToValue = newValue
+  }
+
+  override fun applyTargetValue() {
+    setCurrent(animatingToValue)
+  }
+
+  override fun retargetFactor(newValue: Float, animated: Boolean): Float {
+    val continues = (newValue - current) * (animatingToValue - animatingFromValue) > 0.0f
+    return distanceFactor(distance(current, newValue), animated, continues)
+  }
+
+  override fun onAnimationFraction(fraction: Float) {
+    setCurrent(animatingFromValue + (animatingToValue - animatingFromValue) * fraction)
+  }
+
+  override fun onPrepareAnimation() {
+    animatingFromValue = current
+  }
 }
\ No newline at end of file